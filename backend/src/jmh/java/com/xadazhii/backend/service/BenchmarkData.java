@@ -0,0 +1,73 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded inputs shared by the benchmarks, so two runs on different commits measure the same data.
+ */
+final class BenchmarkData {
+
+    // Same dimension as all-MiniLM-L6-v2, the production embedding model.
+    static final int DIMENSIONS = 384;
+    static final long SEED = 42;
+
+    private static final String[] WORDS = {
+            "gradient", "descent", "converges", "when", "the", "learning", "rate", "is", "small", "enough",
+            "matrix", "eigenvalue", "vector", "space", "basis", "linear", "transformation", "kernel", "image",
+            "probability", "distribution", "variance", "expected", "value", "random", "variable", "sample",
+            "algorithm", "complexity", "recursion", "graph", "shortest", "path", "tree", "heap", "sorting"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static Embedding unitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] *= scale;
+        }
+        return Embedding.from(vector);
+    }
+
+    // Lecture-like prose of roughly the given length, split into sentences and paragraphs for the splitter.
+    static String lectureText(int chars) {
+        Random random = new Random(SEED);
+        StringBuilder text = new StringBuilder(chars + 100);
+        int sentences = 0;
+        while (text.length() < chars) {
+            int words = 8 + random.nextInt(15);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentences % 6 == 0) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+
+    // Embeds text to a vector seeded by the text, so the same query always lands on the same vector.
+    static EmbeddingModel hashingModel() {
+        return new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                return Response.from(segments.stream()
+                        .map(segment -> unitVector(new Random(segment.text().hashCode())))
+                        .toList());
+            }
+        };
+    }
+}
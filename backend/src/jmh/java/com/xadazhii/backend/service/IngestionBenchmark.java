@@ -0,0 +1,85 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split, embed and store of one extracted PDF, with the production splitter (recursive, 500/100) and the
+ * all-MiniLM-L6-v2 model. 200 000 characters is about a 60-page lecture PDF.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class IngestionBenchmark {
+
+    @Param({"20000", "200000"})
+    public int chars;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    @Param({"16"})
+    public int batchSize;
+
+    private ExecutorService embeddingExecutor;
+    private EmbeddingModel embeddingModel;
+    private String text;
+    private ChatPartitionedEmbeddingStore store;
+    private ParallelEmbeddingIngestor ingestor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = BenchmarkData.lectureText(chars);
+        // As in production, the model's own executor is the only embedding pool, sized like ingest.workers.
+        embeddingExecutor = Executors.newFixedThreadPool(workers);
+        embeddingModel = new AllMiniLmL6V2EmbeddingModel(embeddingExecutor);
+    }
+
+    // A fresh store per iteration keeps the stored volume, and with it the add cost, the same throughout.
+    @Setup(Level.Iteration)
+    public void newStore() {
+        store = new ChatPartitionedEmbeddingStore();
+        ingestor = new ParallelEmbeddingIngestor(DocumentSplitters.recursive(500, 100), embeddingModel, store,
+                batchSize, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public ParallelEmbeddingIngestor.IngestionStats ingest() {
+        Document document = Document.from(text);
+        document.metadata().add(ChatPartitionedEmbeddingStore.CHAT_ID_KEY, "chat-1");
+        document.metadata().add("file_name", "lecture.pdf");
+        return ingestor.ingest(document);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() {
+        store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownExecutor() {
+        embeddingExecutor.shutdown();
+    }
+}
@@ -0,0 +1,100 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One RAG lookup as a chat turn does it: query embedding (a cache hit after warmup, so the model is out of the
+ * picture) and a similarity search over the asking chat's memory-mapped partition. Other chats' segments are
+ * stored too, to show that retrieval cost does not grow with them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class RetrievalBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"100", "1000", "10000"})
+    public int segmentsPerChat;
+
+    @Param({"1", "20"})
+    public int chats;
+
+    private Path directory;
+    private ChatPartitionedEmbeddingStore store;
+    private ChatAwareContentRetriever retriever;
+    private List<Query> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("retrieval-benchmark");
+        store = new ChatPartitionedEmbeddingStore(chatId -> MappedEmbeddingStore.open(directory.resolve(chatId)));
+
+        Random random = new Random(BenchmarkData.SEED);
+        for (int chat = 0; chat < chats; chat++) {
+            String chatId = "chat-" + chat;
+            List<Embedding> embeddings = new ArrayList<>(segmentsPerChat);
+            List<TextSegment> segments = new ArrayList<>(segmentsPerChat);
+            for (int i = 0; i < segmentsPerChat; i++) {
+                embeddings.add(BenchmarkData.unitVector(random));
+                segments.add(TextSegment.from("segment " + i + " of " + chatId,
+                        new Metadata().add(ChatPartitionedEmbeddingStore.CHAT_ID_KEY, chatId)));
+            }
+            store.addAll(embeddings, segments);
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(BenchmarkData.hashingModel(), registry, QUERIES);
+        retriever = new ChatAwareContentRetriever(store, cache, 10, 0.0, registry, "explanation");
+
+        queries = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            String text = "What does lecture part " + i + " say about convergence?";
+            String chatId = "chat-" + (i % chats);
+            queries.add(Query.from(text, dev.langchain4j.rag.query.Metadata.from(UserMessage.from(text), chatId, List.of())));
+        }
+    }
+
+    @Benchmark
+    public List<Content> retrieve() {
+        Query query = queries.get(next);
+        next = (next + 1) % QUERIES;
+        return retriever.retrieve(query);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+}
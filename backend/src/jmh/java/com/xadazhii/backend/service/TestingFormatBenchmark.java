@@ -0,0 +1,73 @@
+package com.xadazhii.backend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU-only part of a testing turn: reading the student's option letter and rendering the reply.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestingFormatBenchmark {
+
+    private static final String[] ANSWERS = {"b", "C)", "  d. ", "I think it is the second one"};
+
+    private ChatSessionState questionSession;
+    private AiTestingResponse question;
+    private ChatSessionState feedbackSession;
+    private AiTestingResponse feedback;
+
+    @Setup
+    public void setUp() {
+        question = new AiTestingResponse();
+        question.setType("MC");
+        question.setQuestion("Which condition guarantees that gradient descent converges on a convex function?");
+        question.setOptions(List.of(
+                "A learning rate below 2/L, where L is the Lipschitz constant of the gradient",
+                "Any positive learning rate",
+                "A learning rate that grows every step",
+                "Random initialization"));
+        question.setCorrectOptionIndex(0);
+        questionSession = new ChatSessionState();
+        questionSession.setWaitingForAnswer(true);
+        questionSession.setLastQuestionType("MC");
+
+        feedback = new AiTestingResponse();
+        feedback.setType("FEEDBACK");
+        feedback.setEvaluation("INCORRECT");
+        feedback.setFeedback("Any positive rate can overshoot: the step must stay below 2/L.");
+        feedbackSession = new ChatSessionState();
+    }
+
+    @Benchmark
+    public void parseChoice(Blackhole blackhole) {
+        for (String answer : ANSWERS) {
+            blackhole.consume(ChatAiService.parseUserChoiceToIndex(answer));
+        }
+    }
+
+    @Benchmark
+    public String formatQuestion() {
+        return ChatAiService.formatUserResponse(questionSession, question);
+    }
+
+    @Benchmark
+    public String formatFeedback() {
+        return ChatAiService.formatUserResponse(feedbackSession, feedback);
+    }
+}
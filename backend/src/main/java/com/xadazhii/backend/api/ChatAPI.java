@@ -1,16 +1,26 @@
 package com.xadazhii.backend.api;
 
 import com.xadazhii.backend.dto.ChatMessageRequest;
+import com.xadazhii.backend.dto.MessagePage;
 import com.xadazhii.backend.entity.Chat;
 import com.xadazhii.backend.entity.ChatMessage;
 import com.xadazhii.backend.service.ChatAiService;
 import com.xadazhii.backend.service.ChatMessageService;
 import com.xadazhii.backend.service.ChatService;
+import com.xadazhii.backend.service.ModelBusyException;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -18,6 +28,9 @@ import java.util.stream.Collectors;
 @RestController
 public class ChatAPI {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatAPI.class);
+    private static final long STREAM_TIMEOUT_MS = 180_000L;
+
     private final ChatService chatService;
     private final ChatMessageService chatMessageService;
     private final ChatAiService chatAiService;
@@ -51,27 +64,13 @@ public class ChatAPI {
         try {
             String chatId = request.getChatId();
             String message = request.getMessage();
-            String mode = request.getMode();
-
-            if (mode == null || (!mode.equals("explanation") && !mode.equals("testing"))) {
-                mode = "explanation";
-            }
+            String mode = normalizeMode(request.getMode());
 
             Chat chat = chatService.getOrCreateNewChat(chatId);
-
-            ChatMessage userMessage = new ChatMessage(message);
-            userMessage.setModelMessage(false);
-            chat.getMessages().add(userMessage);
-            chatMessageService.save(userMessage);
+            chatMessageService.append(chat.getId(), message, false);
 
             String response = chatAiService.generateResponseByMode(chat.getId(), message, mode);
-
-            ChatMessage aiMessage = new ChatMessage(response);
-            aiMessage.setModelMessage(true);
-            chat.getMessages().add(aiMessage);
-            chatMessageService.save(aiMessage);
-
-            chatService.save(chat);
+            chatMessageService.append(chat.getId(), response, true);
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -80,6 +79,11 @@ public class ChatAPI {
                     "chatId", chat.getId()
             ));
 
+        } catch (ModelBusyException e) {
+            return ResponseEntity.status(503).body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
                     "success", false,
@@ -88,9 +92,83 @@ public class ChatAPI {
         }
     }
 
+    @PostMapping(value = "/api/chat/message/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(@RequestBody ChatMessageRequest request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        String mode = normalizeMode(request.getMode());
+
+        Chat chat = chatService.getOrCreateNewChat(request.getChatId());
+        chatMessageService.append(chat.getId(), request.getMessage(), false);
+
+        try {
+            chatAiService.streamResponseByMode(chat.getId(), request.getMessage(), mode,
+                    // JSON payload: SSE clients strip one leading space after "data:", which would glue words together.
+                    token -> sendEvent(emitter, "token", Map.of("t", token)),
+                    response -> {
+                        chatMessageService.append(chat.getId(), response, true);
+
+                        sendEvent(emitter, "done", Map.of(
+                                "response", response,
+                                "mode", mode,
+                                "chatId", chat.getId()
+                        ));
+                        emitter.complete();
+                    },
+                    error -> {
+                        log.error("❌ Streaming failed for chat {}: {}", chat.getId(), error.getMessage(), error);
+                        sendEvent(emitter, "error", Map.of("error", String.valueOf(error.getMessage())));
+                        emitter.complete();
+                    });
+        } catch (Exception e) {
+            log.error("❌ Could not start streaming for chat {}: {}", chat.getId(), e.getMessage(), e);
+            sendEvent(emitter, "error", Map.of("error", String.valueOf(e.getMessage())));
+            emitter.complete();
+        }
+
+        return emitter;
+    }
+
+    private static void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; the answer is still persisted once generation finishes.
+            log.debug("Dropping SSE '{}' event: {}", name, e.getMessage());
+        }
+    }
+
+    private static String normalizeMode(String mode) {
+        if (mode == null || (!mode.equals("explanation") && !mode.equals("testing"))) {
+            return "explanation";
+        }
+        return mode;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ChatDetailsDTO {
+        private String id;
+        private String title;
+        // Latest page in chronological order; older pages come from /api/chat/{chatid}/messages?before=nextCursor.
+        private List<ChatMessage> messages;
+        private Long nextCursor;
+    }
+
     @GetMapping(value = "/api/fetchChat/{chatid}", produces = "application/json")
-    public Chat fetchChat(@PathVariable String chatid) {
-        return chatService.getOrCreateNewChat(chatid);
+    public ChatDetailsDTO fetchChat(@PathVariable String chatid) {
+        Chat chat = chatService.getOrCreateNewChat(chatid);
+        MessagePage latest = chatMessageService.page(chat.getId(), null, null);
+
+        List<ChatMessage> chronological = new ArrayList<>(latest.getMessages());
+        Collections.reverse(chronological);
+        return new ChatDetailsDTO(chat.getId(), chat.getTitle(), chronological, latest.getNextCursor());
+    }
+
+    @GetMapping(value = "/api/chat/{chatid}/messages", produces = "application/json")
+    public MessagePage fetchMessages(@PathVariable String chatid,
+                                     @RequestParam(required = false) Long before,
+                                     @RequestParam(required = false) Integer limit) {
+        return chatMessageService.page(chatid, before, limit);
     }
 
     @Getter
@@ -98,13 +176,16 @@ public class ChatAPI {
     public static class ChatSummaryDTO {
         private String id;
         private String title;
+        private Instant lastActivityAt;
+        private long messageCount;
     }
 
     @GetMapping(value = "/api/allChats", produces = "application/json")
-    public List<ChatSummaryDTO> allChats() {
-        List<Chat> chats = chatService.findAll();
-        return chats.stream()
-                .map(chat -> new ChatSummaryDTO(chat.getId(), chat.getTitle()))
+    public List<ChatSummaryDTO> allChats(@RequestParam(defaultValue = "0") int page,
+                                         @RequestParam(defaultValue = "100") int size) {
+        return chatService.findSummaries(page, size).stream()
+                .map(chat -> new ChatSummaryDTO(chat.getId(), chat.getTitle(), chat.getLastActivityAt(),
+                        chat.getMessageCount() != null ? chat.getMessageCount() : 0))
                 .collect(Collectors.toList());
     }
 
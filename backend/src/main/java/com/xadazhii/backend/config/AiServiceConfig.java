@@ -1,61 +1,184 @@
 package com.xadazhii.backend.config;
 
+import com.xadazhii.backend.service.ApproximateTokenizer;
+import com.xadazhii.backend.service.ChatPartitionedEmbeddingStore;
+import com.xadazhii.backend.service.ConversationSummarizer;
+import com.xadazhii.backend.service.MappedEmbeddingStore;
+import com.xadazhii.backend.service.ModelCallScheduler;
+import com.xadazhii.backend.service.ParallelEmbeddingIngestor;
+import com.xadazhii.backend.service.PersistentChatMemoryStore;
+import com.xadazhii.backend.service.ScheduledChatLanguageModel;
+import com.xadazhii.backend.service.ScheduledStreamingChatLanguageModel;
+import com.xadazhii.backend.service.SummarizingTokenWindowChatMemory;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @Configuration
 public class AiServiceConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(AiServiceConfig.class);
+    private static final String CHAT_MODEL_NAME = "llama3.2:3b";
+
     @Value("${ollama.server.host.url}")
     private String ollamaHost;
 
+    @Value("${embedding.store.dir:./embeddings}")
+    private String embeddingStoreDir;
+
+    // Chat and vision models run on the same Ollama instance, so one scheduler orders all of their calls.
+    @Bean
+    public ModelCallScheduler ollamaScheduler(MeterRegistry meterRegistry,
+                                              @Value("${ollama.scheduler.max-in-flight:3}") int maxInFlight,
+                                              @Value("${ollama.scheduler.reserved-for-interactive:1}") int reservedForInteractive,
+                                              @Value("${ollama.scheduler.max-queued:150}") int maxQueued,
+                                              @Value("${ollama.scheduler.queue-timeout-seconds:60}") long queueTimeoutSeconds,
+                                              @Value("${ollama.scheduler.background-queue-timeout-seconds:900}") long backgroundQueueTimeoutSeconds) {
+        return new ModelCallScheduler("ollama", maxInFlight, reservedForInteractive, maxQueued,
+                Duration.ofSeconds(queueTimeoutSeconds), Duration.ofSeconds(backgroundQueueTimeoutSeconds), meterRegistry);
+    }
+
+    @Bean
+    public ModelCallScheduler transcriberScheduler(MeterRegistry meterRegistry,
+                                                   @Value("${whisper.scheduler.max-in-flight:1}") int maxInFlight,
+                                                   @Value("${whisper.scheduler.max-queued:20}") int maxQueued,
+                                                   @Value("${whisper.scheduler.queue-timeout-seconds:600}") long queueTimeoutSeconds) {
+        Duration queueTimeout = Duration.ofSeconds(queueTimeoutSeconds);
+        return new ModelCallScheduler("transcriber", maxInFlight, 0, maxQueued, queueTimeout, queueTimeout, meterRegistry);
+    }
+
     @Bean
-    public ChatLanguageModel chatLanguageModel() {
-        return OllamaChatModel.builder()
+    @Primary
+    public ChatLanguageModel chatLanguageModel(@Qualifier("ollamaScheduler") ModelCallScheduler ollamaScheduler,
+                                               MeterRegistry meterRegistry) {
+        return new ScheduledChatLanguageModel(OllamaChatModel.builder()
                 .baseUrl(ollamaHost)
-                .modelName("llama3.2:3b")
+                .modelName(CHAT_MODEL_NAME)
                 .timeout(Duration.ofSeconds(120))
                 .temperature(0.1)
-                .build();
+                .build(), ollamaScheduler, meterRegistry);
     }
 
     @Bean
-    public EmbeddingModel embeddingModel() {
-        return new AllMiniLmL6V2EmbeddingModel();
+    @Primary
+    public StreamingChatLanguageModel streamingChatLanguageModel(@Qualifier("ollamaScheduler") ModelCallScheduler ollamaScheduler,
+                                                                 MeterRegistry meterRegistry) {
+        return new ScheduledStreamingChatLanguageModel(OllamaStreamingChatModel.builder()
+                .baseUrl(ollamaHost)
+                .modelName(CHAT_MODEL_NAME)
+                .timeout(Duration.ofSeconds(120))
+                .temperature(0.1)
+                .build(), ollamaScheduler, meterRegistry);
     }
 
+    // Testing mode parses every answer as AiTestingResponse; Ollama's JSON mode rules out prose and markdown fences.
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
-        return new InMemoryEmbeddingStore<>();
+    public ChatLanguageModel testingChatModel(@Qualifier("ollamaScheduler") ModelCallScheduler ollamaScheduler,
+                                              MeterRegistry meterRegistry) {
+        return new ScheduledChatLanguageModel(OllamaChatModel.builder()
+                .baseUrl(ollamaHost)
+                .modelName(CHAT_MODEL_NAME)
+                .timeout(Duration.ofSeconds(120))
+                .temperature(0.1)
+                .format("json")
+                .build(), ollamaScheduler, meterRegistry);
+    }
+
+    @Bean
+    public StreamingChatLanguageModel testingStreamingChatModel(@Qualifier("ollamaScheduler") ModelCallScheduler ollamaScheduler,
+                                                                MeterRegistry meterRegistry) {
+        return new ScheduledStreamingChatLanguageModel(OllamaStreamingChatModel.builder()
+                .baseUrl(ollamaHost)
+                .modelName(CHAT_MODEL_NAME)
+                .timeout(Duration.ofSeconds(120))
+                .temperature(0.1)
+                .format("json")
+                .build(), ollamaScheduler, meterRegistry);
+    }
+
+    // The in-process model embeds the segments of a batch in parallel on this pool, the only embedding pool in
+    // the application, so ingest.workers bounds the CPU used for embeddings.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService embeddingExecutor(@Value("${ingest.workers:0}") int workers) {
+        int workerCount = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "embed-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean
+    public EmbeddingModel embeddingModel(@Qualifier("embeddingExecutor") ExecutorService embeddingExecutor) {
+        return new AllMiniLmL6V2EmbeddingModel(embeddingExecutor);
+    }
+
+    @Bean
+    public EmbeddingStore<TextSegment> embeddingStore() throws IOException {
+        Path root = Files.createDirectories(Paths.get(embeddingStoreDir));
+
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore(chatId ->
+                MappedEmbeddingStore.open(root.resolve(URLEncoder.encode(chatId, StandardCharsets.UTF_8))));
+
+        long started = System.currentTimeMillis();
+        try (Stream<Path> partitionDirs = Files.list(root)) {
+            partitionDirs.filter(Files::isDirectory)
+                    .map(dir -> URLDecoder.decode(dir.getFileName().toString(), StandardCharsets.UTF_8))
+                    .forEach(store::openPartition);
+        }
+        log.info("💾 Mapped {} embedding partitions from {} in {} ms",
+                store.partitionCount(), root, System.currentTimeMillis() - started);
+
+        return store;
     }
 
     @Bean
-    public EmbeddingStoreIngestor embeddingStoreIngestor(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel) {
+    public ParallelEmbeddingIngestor embeddingIngestor(EmbeddingStore<TextSegment> embeddingStore,
+                                                       EmbeddingModel embeddingModel,
+                                                       MeterRegistry meterRegistry,
+                                                       @Value("${ingest.batch-size:16}") int batchSize) {
         DocumentSplitter documentSplitter = DocumentSplitters.recursive(500, 100);
 
-        return EmbeddingStoreIngestor.builder()
-                .documentSplitter(documentSplitter)
-                .embeddingModel(embeddingModel)
-                .embeddingStore(embeddingStore)
-                .build();
+        return new ParallelEmbeddingIngestor(documentSplitter, embeddingModel, embeddingStore, batchSize, meterRegistry);
     }
 
+    // Memory ids are "<chatId>:<mode>" (see ChatMemoryRegistry), so each mode keeps its own window per chat.
     @Bean
-    public ChatMemoryProvider chatMemoryProvider() {
-        return chatId -> MessageWindowChatMemory.withMaxMessages(10);
+    public ChatMemoryProvider chatMemoryProvider(PersistentChatMemoryStore chatMemoryStore,
+                                                 ConversationSummarizer summarizer,
+                                                 @Value("${chat.memory.max-tokens:3000}") int maxTokens,
+                                                 @Value("${chat.memory.summarize:false}") boolean summarize) {
+        ApproximateTokenizer tokenizer = new ApproximateTokenizer();
+        return memoryId -> new SummarizingTokenWindowChatMemory(memoryId.toString(), maxTokens, tokenizer,
+                chatMemoryStore, summarize ? summarizer : null);
     }
 }
\ No newline at end of file
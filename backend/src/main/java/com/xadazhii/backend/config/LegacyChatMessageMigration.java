@@ -0,0 +1,71 @@
+package com.xadazhii.backend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Copies the chat of every message from the old chat_messages join table into chat_message.chat_id,
+ * which replaced the eager Chat.messages collection, then drops the join table so its foreign keys
+ * no longer block deleting chats and messages. Rows that already have a chat_id are left alone.
+ * Chats created before the activity columns existed get their message count filled in afterwards.
+ */
+@Component
+public class LegacyChatMessageMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyChatMessageMigration.class);
+    private static final String LEGACY_TABLE = "chat_messages";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LegacyChatMessageMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        backfillChatIds();
+        backfillChatActivity();
+    }
+
+    private void backfillChatIds() {
+        Boolean legacyTablePresent = jdbcTemplate.execute(this::hasLegacyTable);
+        if (!Boolean.TRUE.equals(legacyTablePresent)) {
+            return;
+        }
+
+        int updated = jdbcTemplate.update(
+                "update chat_message set chat_id = (select l.chat_id from " + LEGACY_TABLE + " l where l.messages_id = chat_message.id) " +
+                        "where chat_id is null and exists (select 1 from " + LEGACY_TABLE + " l where l.messages_id = chat_message.id)");
+        jdbcTemplate.execute("drop table " + LEGACY_TABLE);
+        log.info("🗂️ Linked {} legacy chat messages to their chat and dropped {}", updated, LEGACY_TABLE);
+    }
+
+    private void backfillChatActivity() {
+        int updated = jdbcTemplate.update(
+                "update chat set message_count = (select count(*) from chat_message m where m.chat_id = chat.id), " +
+                        "last_activity_at = coalesce(last_activity_at, current_timestamp) where message_count is null");
+        if (updated > 0) {
+            log.info("🗂️ Filled in message counts for {} chats", updated);
+        }
+    }
+
+    private boolean hasLegacyTable(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[]{LEGACY_TABLE, LEGACY_TABLE.toUpperCase()}) {
+            try (ResultSet tables = metaData.getTables(null, null, name, new String[]{"TABLE"})) {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
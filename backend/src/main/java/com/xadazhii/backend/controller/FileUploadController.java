@@ -1,28 +1,18 @@
 package com.xadazhii.backend.controller;
 
+import com.xadazhii.backend.dto.UploadJob;
 import com.xadazhii.backend.entity.Chat;
-import com.xadazhii.backend.entity.ChatMessage;
-import com.xadazhii.backend.service.AudioTranscriptionService;
-import com.xadazhii.backend.service.ChatMessageService;
 import com.xadazhii.backend.service.ChatService;
-import com.xadazhii.backend.service.ImageDescriptionService;
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import com.xadazhii.backend.service.UploadJobService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api")
@@ -30,26 +20,13 @@ public class FileUploadController {
 
     private static final Logger log = LoggerFactory.getLogger(FileUploadController.class);
 
-    private final EmbeddingStoreIngestor ingestor;
     private final ChatService chatService;
-    private final ChatMessageService chatMessageService;
-    private final Path uploadDir;
+    private final UploadJobService uploadJobService;
 
-    private final AudioTranscriptionService audioService;
-    private final ImageDescriptionService imageService;
-
-    public FileUploadController(EmbeddingStoreIngestor ingestor,
-                                ChatService chatService,
-                                ChatMessageService chatMessageService,
-                                @Value("${file.upload-dir}") String uploadDirStr,
-                                AudioTranscriptionService audioService,
-                                ImageDescriptionService imageService) {
-        this.ingestor = ingestor;
+    public FileUploadController(ChatService chatService,
+                                UploadJobService uploadJobService) {
         this.chatService = chatService;
-        this.chatMessageService = chatMessageService;
-        this.uploadDir = Paths.get(uploadDirStr);
-        this.audioService = audioService;
-        this.imageService = imageService;
+        this.uploadJobService = uploadJobService;
     }
 
     @PostMapping("/upload/{chatid}")
@@ -58,78 +35,19 @@ public class FileUploadController {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            if (!Files.exists(uploadDir)) {
-                Files.createDirectories(uploadDir);
-            }
-
-            String originalFilename = file.getOriginalFilename();
-            String fileType = file.getContentType();
-            byte[] fileBytes = file.getBytes();
-
-            String extractedText;
-            String sourceType;
-
-            if (fileType != null && fileType.startsWith("image/")) {
-                log.info("Type: Image. Running description service...");
-                extractedText = imageService.describe(fileBytes);
-                sourceType = "image";
-
-            } else if (fileType != null && (fileType.startsWith("audio/") || fileType.startsWith("video/"))) {
-                log.info("Type: Audio/Video. Attempting transcription...");
-                try {
-                    extractedText = audioService.transcribe(fileBytes, originalFilename);
-                    sourceType = "audio_transcription";
-                } catch (Exception e) {
-                    log.warn("🎙️❌ Failed to transcribe, trying video frame analysis: {}", e.getMessage());
-                    extractedText = imageService.describeVideo(fileBytes, originalFilename);
-                    sourceType = "video_frames";
-                }
-
-            } else if (fileType != null && "application/pdf".equals(fileType)) {
-                log.info("Type: PDF. Parsing with PDFBox...");
-                try (PDDocument pd = PDDocument.load(new ByteArrayInputStream(fileBytes))) {
-                    PDFTextStripper stripper = new PDFTextStripper();
-                    String pdfText = stripper.getText(pd);
-                    extractedText = (pdfText != null) ? pdfText : "";
-                    sourceType = "pdf";
-                }
-
-            } else {
-                log.info("Type: Text/Other ({}). Loading as plain text...", fileType);
-                extractedText = new String(fileBytes, StandardCharsets.UTF_8);
-                sourceType = "text_file";
-            }
-
-            if (extractedText == null || extractedText.trim().isEmpty()) {
-                throw new RuntimeException("Extracted text is empty. Cannot ingest empty document.");
-            }
-
-            Document document = Document.from(extractedText);
-
-            document.metadata().add("chatId", chatid);
-            document.metadata().add("file_name", originalFilename);
-            document.metadata().add("source_type", sourceType);
-
-            log.info("🔍 Document Metadata before ingest: {}", document.metadata().asMap());
-
-            ingestor.ingest(document);
-            log.info("🧠 Ingested successfully. ChatID: {}", chatid);
-
             Chat chat = chatService.getOrCreateNewChat(chatid);
-            String messageText = String.format(
-                    "✅ Material `%s` processed successfully. You can now ask questions based on this file.",
-                    originalFilename
-            );
 
-            ChatMessage systemMessage = new ChatMessage(messageText);
-            systemMessage.setModelMessage(true);
-            chat.getMessages().add(systemMessage);
-            chatMessageService.save(systemMessage);
-            chatService.save(chat);
+            UploadJob job = uploadJobService.submit(chat.getId(), file);
 
-            response.put("status", "success");
+            response.put("status", "queued");
+            response.put("jobId", job.getId());
             response.put("chatId", chat.getId());
-            return ResponseEntity.ok(response);
+            return ResponseEntity.accepted().body(response);
+
+        } catch (RejectedExecutionException e) {
+            log.warn("⏳ Upload queue full for file [{}]", file.getOriginalFilename());
+            response.put("error", "Too many uploads of this type are being processed. Please try again later.");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
 
         } catch (Exception e) {
             log.error("❌ Error processing file: {}", e.getMessage(), e);
@@ -137,4 +55,11 @@ public class FileUploadController {
             return ResponseEntity.internalServerError().body(response);
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping(value = "/upload/jobs/{jobId}", produces = "application/json")
+    public ResponseEntity<UploadJob> uploadStatus(@PathVariable String jobId) {
+        return uploadJobService.find(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
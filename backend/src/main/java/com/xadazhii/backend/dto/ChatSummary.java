@@ -0,0 +1,15 @@
+package com.xadazhii.backend.dto;
+
+import java.time.Instant;
+
+// Interface projection: the sidebar query selects these columns only and never touches chat_message.
+public interface ChatSummary {
+
+    String getId();
+
+    String getTitle();
+
+    Instant getLastActivityAt();
+
+    Long getMessageCount();
+}
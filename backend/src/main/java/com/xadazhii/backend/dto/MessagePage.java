@@ -0,0 +1,17 @@
+package com.xadazhii.backend.dto;
+
+import com.xadazhii.backend.entity.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class MessagePage {
+
+    // Newest first.
+    private final List<ChatMessage> messages;
+
+    // Pass as "before" to fetch the next (older) page; null when there is no older message.
+    private final Long nextCursor;
+}
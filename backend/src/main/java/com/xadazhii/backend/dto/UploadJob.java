@@ -0,0 +1,50 @@
+package com.xadazhii.backend.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+public class UploadJob {
+
+    public enum Status { QUEUED, PROCESSING, COMPLETED, FAILED, CANCELLED }
+
+    public enum MediaKind { IMAGE, AUDIO_VIDEO, PDF, TEXT }
+
+    private final String id;
+    private final String chatId;
+    private final String fileName;
+    private final MediaKind mediaKind;
+    private final Instant createdAt;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile String stage = "queued";
+    private volatile String error;
+    private volatile Integer segments;
+    private volatile boolean cacheHit;
+    private volatile Instant finishedAt;
+    private volatile boolean cancelled;
+
+    public UploadJob(String chatId, String fileName, MediaKind mediaKind) {
+        this.id = UUID.randomUUID().toString();
+        this.chatId = chatId;
+        this.fileName = fileName;
+        this.mediaKind = mediaKind;
+        this.createdAt = Instant.now();
+    }
+
+    public static MediaKind kindOf(String contentType) {
+        if (contentType != null && contentType.startsWith("image/")) {
+            return MediaKind.IMAGE;
+        }
+        if (contentType != null && (contentType.startsWith("audio/") || contentType.startsWith("video/"))) {
+            return MediaKind.AUDIO_VIDEO;
+        }
+        if ("application/pdf".equals(contentType)) {
+            return MediaKind.PDF;
+        }
+        return MediaKind.TEXT;
+    }
+}
@@ -2,39 +2,38 @@ package com.xadazhii.backend.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Instant;
 import java.util.UUID;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_chat_last_activity_at", columnList = "last_activity_at"))
 public class Chat {
 
     @Id
     private String id;
 
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
-    private List<ChatMessage> messages;
+    // Messages reference their chat through ChatMessage.chatId and are read page by page,
+    // so loading a chat never materializes its whole history.
 
     @Column(length = 100)
     private String title;
 
+    // Maintained by ChatRepository.recordActivity only, so saving a stale Chat cannot overwrite them.
+    @Column(name = "last_activity_at", updatable = false)
+    private Instant lastActivityAt;
+
+    @Column(updatable = false)
+    private Long messageCount;
+
     @Transient
     private boolean isNew;
 
     public Chat() {
         this.id = UUID.randomUUID().toString();
-        this.messages = new ArrayList<>();
         this.title = "New Chat";
+        this.lastActivityAt = Instant.now();
+        this.messageCount = 0L;
         this.isNew = true;
     }
-
-    public boolean isPending() {
-        for (ChatMessage message : messages) {
-            if (message.isPending()) {
-                return true;
-            }
-        }
-        return false;
-    }
 }
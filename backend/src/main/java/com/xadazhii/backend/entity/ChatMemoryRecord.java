@@ -0,0 +1,30 @@
+package com.xadazhii.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.Instant;
+
+// LLM conversation memory of one chat and mode: the token window as langchain4j JSON plus the rolling summary.
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "chat_memory")
+public class ChatMemoryRecord {
+
+    @Id
+    @Column(length = 64)
+    private String memoryId;
+
+    @Column(columnDefinition = "TEXT")
+    private String messages;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    private Instant updatedAt;
+
+    public ChatMemoryRecord(String memoryId) {
+        this.memoryId = memoryId;
+    }
+}
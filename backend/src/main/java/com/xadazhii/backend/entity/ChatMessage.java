@@ -7,12 +7,16 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @Entity
+@Table(indexes = @Index(name = "idx_chat_message_chat_id_id", columnList = "chat_id, id"))
 public class ChatMessage {
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    @Column(name = "chat_id", length = 36)
+    private String chatId;
+
     @Column(columnDefinition = "TEXT")
     private String message;
 
@@ -23,4 +27,10 @@ public class ChatMessage {
     public ChatMessage(String message) {
         this.message = message;
     }
-}
\ No newline at end of file
+
+    public ChatMessage(String chatId, String message, boolean modelMessage) {
+        this.chatId = chatId;
+        this.message = message;
+        this.modelMessage = modelMessage;
+    }
+}
@@ -0,0 +1,28 @@
+package com.xadazhii.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.Instant;
+
+// Persisted testing-session state of one chat, stored as JSON so new fields need no schema change.
+@Data
+@NoArgsConstructor
+@Entity
+public class ChatSession {
+
+    @Id
+    @Column(length = 36)
+    private String chatId;
+
+    @Column(columnDefinition = "TEXT")
+    private String state;
+
+    private Instant updatedAt;
+
+    public ChatSession(String chatId, String state) {
+        this.chatId = chatId;
+        this.state = state;
+        this.updatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,16 @@
+package com.xadazhii.backend.repository;
+
+import com.xadazhii.backend.entity.ChatMemoryRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatMemoryRecordRepository extends JpaRepository<ChatMemoryRecord, String> {
+
+    @Modifying
+    @Query("delete from ChatMemoryRecord m where m.memoryId like concat(:prefix, '%')")
+    int deleteByMemoryIdPrefix(@Param("prefix") String prefix);
+}
@@ -1,7 +1,9 @@
 package com.xadazhii.backend.repository;
 
 import com.xadazhii.backend.entity.ChatMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.util.List;
@@ -14,4 +16,12 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     @Query("Select c from ChatMessage c where c.id = :Id")
     List<ChatMessage> getChatMessageById(@Param("Id") Long Id);
 
+    // Keyset pagination over (chat_id, id): newest first, each page starts below the previous page's last id.
+    List<ChatMessage> findByChatIdOrderByIdDesc(String chatId, Limit limit);
+
+    List<ChatMessage> findByChatIdAndIdLessThanOrderByIdDesc(String chatId, Long id, Limit limit);
+
+    @Modifying
+    @Query("delete from ChatMessage c where c.chatId = :chatId")
+    int deleteByChatId(@Param("chatId") String chatId);
 }
@@ -1,9 +1,24 @@
 package com.xadazhii.backend.repository;
 
+import com.xadazhii.backend.dto.ChatSummary;
 import com.xadazhii.backend.entity.Chat;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.Instant;
+import java.util.List;
 
 @Repository
 public interface ChatRepository extends JpaRepository<Chat, String> {
-}
\ No newline at end of file
+
+    @Query("select c.id as id, c.title as title, c.lastActivityAt as lastActivityAt, c.messageCount as messageCount " +
+            "from Chat c order by c.lastActivityAt desc, c.id")
+    List<ChatSummary> findSummaries(Pageable pageable);
+
+    @Modifying
+    @Query("update Chat c set c.lastActivityAt = :at, c.messageCount = coalesce(c.messageCount, 0) + :added where c.id = :chatId")
+    int recordActivity(@Param("chatId") String chatId, @Param("added") long added, @Param("at") Instant at);
+}
@@ -0,0 +1,9 @@
+package com.xadazhii.backend.repository;
+
+import com.xadazhii.backend.entity.ChatSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatSessionRepository extends JpaRepository<ChatSession, String> {
+}
@@ -0,0 +1,25 @@
+package com.xadazhii.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import java.util.List;
+
+@Data
+class AiTestingResponse {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private String evaluation;
+    private String feedback;
+    private String question;
+    private List<String> options;
+    private String type;
+    private Integer correctOptionIndex;
+    private List<String> optionExplanations;
+
+    static AiTestingResponse fromModelOutput(String raw) throws JsonProcessingException {
+        String cleanJson = raw.replaceAll("```json", "").replaceAll("```", "").trim();
+        return OBJECT_MAPPER.readValue(cleanJson, AiTestingResponse.class);
+    }
+}
@@ -0,0 +1,69 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.Tokenizer;
+
+/**
+ * Cheap token estimate for budgeting prompts sent to Ollama: about four characters per token for English text
+ * with the Llama 3 tokenizer, plus a fixed per-message overhead for the chat template.
+ */
+public class ApproximateTokenizer implements Tokenizer {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        String text;
+        if (message instanceof SystemMessage systemMessage) {
+            text = systemMessage.text();
+        } else if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+            text = userMessage.singleText();
+        } else if (message instanceof AiMessage aiMessage) {
+            text = aiMessage.text();
+        } else {
+            text = message.toString();
+        }
+        return TOKENS_PER_MESSAGE + estimateTokenCountInText(text);
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+
+    @Override
+    public int estimateTokenCountInToolSpecifications(Iterable<ToolSpecification> toolSpecifications) {
+        int total = 0;
+        for (ToolSpecification specification : toolSpecifications) {
+            total += estimateTokenCountInText(specification.toString());
+        }
+        return total;
+    }
+
+    @Override
+    public int estimateTokenCountInToolExecutionRequests(Iterable<ToolExecutionRequest> toolExecutionRequests) {
+        int total = 0;
+        for (ToolExecutionRequest request : toolExecutionRequests) {
+            total += estimateTokenCountInText(request.name()) + estimateTokenCountInText(request.arguments());
+        }
+        return total;
+    }
+}
@@ -1,14 +1,21 @@
 package com.xadazhii.backend.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.UUID;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -23,120 +30,139 @@ public class AudioTranscriptionService {
     @Value("${whisper.cpp.model.path:/Users/m/whisper.cpp/models/ggml-tiny.en.bin}")
     private String whisperModelPath;
 
-    @Value("${file.upload-dir:./uploads}")
-    private String uploadDir;
-
     @Value("${ollama.maxFileSizeMb:100}")
     private int maxFileSizeMb;
 
-    public String transcribe(byte[] fileBytes, String originalFilename) throws Exception {
-        log.info("🎙️ Transcribe request received: name={}, size={} bytes",
-                originalFilename, fileBytes.length);
+    private static final int TIMEOUT_MINUTES = 2;
+
+    private final ModelCallScheduler transcriberScheduler;
+    private final Timer transcriptionTimer;
+
+    public AudioTranscriptionService(@Qualifier("transcriberScheduler") ModelCallScheduler transcriberScheduler,
+                                     MeterRegistry meterRegistry) {
+        this.transcriberScheduler = transcriberScheduler;
+        this.transcriptionTimer = Timer.builder("media.transcription")
+                .description("Time of the ffmpeg | whisper pipeline, excluding the wait for a transcriber slot")
+                .register(meterRegistry);
+    }
+
+    // Seekable input: ffmpeg reads the (already spooled) upload directly, which keeps MP4/M4A with a trailing index working.
+    public String transcribe(Path inputFile, String originalFilename) throws Exception {
+        long size = Files.size(inputFile);
+        log.info("🎙️ Transcribe request received: name={}, size={} bytes", originalFilename, size);
 
-        long maxBytes = (long) maxFileSizeMb * 1024L * 1024L;
-        if (fileBytes.length > maxBytes) {
+        if (size > maxBytes()) {
             throw new IllegalArgumentException("File too large. Max allowed: " + maxFileSizeMb + " MB");
         }
 
-        Path tempDir = Files.createDirectories(Path.of(uploadDir));
-        String tempFileId = UUID.randomUUID().toString();
-
-        Path inputFile = tempDir.resolve(tempFileId + "_" + originalFilename);
-        Path outputFile = tempDir.resolve(tempFileId + ".wav");
+        return transcriberScheduler.call(() -> transcriptionTimer.recordCallable(
+                () -> runPipeline(ffmpegCommand(inputFile.toAbsolutePath().toString()))));
+    }
 
-        try {
+    private String[] ffmpegCommand(String input) {
+        return new String[]{
+                ffmpegPath,
+                "-loglevel", "error",
+                "-i", input,
+                "-ar", "16000",
+                "-ac", "1",
+                "-c:a", "pcm_s16le",
+                "-f", "wav",
+                "pipe:1"
+        };
+    }
 
-            Files.write(inputFile, fileBytes);
-            log.info("Saved temporary input file: {}", inputFile);
+    // ffmpeg | whisper-cli: the resampled PCM goes through an OS pipe, no intermediate .wav file.
+    private String runPipeline(String[] ffmpegCommand) throws Exception {
+        String[] whisperCommand = {
+                whisperPath,
+                "-m", whisperModelPath,
+                "-f", "-",
+                "-nt"
+        };
+
+        log.info("Running FFMPEG | Whisper.cpp pipeline...");
+        List<Process> pipeline = ProcessBuilder.startPipeline(List.of(
+                new ProcessBuilder(ffmpegCommand),
+                new ProcessBuilder(whisperCommand)
+        ));
+        Process ffmpeg = pipeline.get(0);
+        Process whisper = pipeline.get(1);
+
+        // ffmpeg reads the file itself; closing its stdin keeps it from waiting on the terminal.
+        ffmpeg.getOutputStream().close();
+
+        // stderr and whisper's stdout are drained concurrently so neither process can block on a full pipe,
+        // and so the waitFor timeout below is reached even if whisper never exits.
+        Thread ffmpegErr = drainInBackground(ffmpeg.getErrorStream(), ffmpegCommand[0]);
+        Thread whisperErr = drainInBackground(whisper.getErrorStream(), whisperCommand[0]);
+        AtomicReference<String> output = new AtomicReference<>("");
+        Thread whisperOut = readInBackground(whisper.getInputStream(), output);
 
-            String[] ffmpegCommand = {
-                    ffmpegPath,
-                    "-i", inputFile.toAbsolutePath().toString(),
-                    "-ar", "16000",
-                    "-ac", "1",
-                    "-c:a", "pcm_s16le",
-                    outputFile.toAbsolutePath().toString()
-            };
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(TIMEOUT_MINUTES);
+            for (Process process : pipeline) {
+                if (!process.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new Exception("Process " + process.info().command().orElse("?")
+                            + " hung (timeout " + TIMEOUT_MINUTES + " min).");
+                }
+            }
+            whisperOut.join();
+            String transcription = output.get();
 
-            log.info("Running FFMPEG to convert the file...");
-            if (!runProcess(ffmpegCommand, 2)) {
+            if (ffmpeg.exitValue() != 0) {
                 throw new Exception("FFMPEG failed to convert the file.");
             }
-            log.info("FFMPEG successfully converted file to: {}", outputFile);
-
-            String[] whisperCommand = {
-                    whisperPath,
-                    "-m", whisperModelPath,
-                    "-f", outputFile.toAbsolutePath().toString(),
-                    "-nt"
-            };
-
-            log.info("Running Whisper.cpp for transcription...");
-            String transcription = runProcessAndGetOutput(whisperCommand, 2);
+            if (whisper.exitValue() != 0) {
+                log.error("Process {} exited with error code {}.", whisperCommand[0], whisper.exitValue());
+                throw new Exception("Error while executing " + whisperCommand[0]);
+            }
 
-            if (transcription.isEmpty()) {
+            String cleanTranscription = transcription.trim();
+            if (cleanTranscription.isEmpty()) {
                 throw new Exception("Whisper.cpp failed to transcribe the file (returned empty result).");
             }
 
-            String cleanTranscription = transcription.trim();
             log.info("🎧 Transcription obtained (length={}): {}", cleanTranscription.length(), cleanTranscription);
             return cleanTranscription;
 
         } finally {
-            Files.deleteIfExists(inputFile);
-            Files.deleteIfExists(outputFile);
-            log.info("Temporary files deleted.");
+            pipeline.forEach(Process::destroyForcibly);
+            whisperOut.join(1000);
+            ffmpegErr.join(1000);
+            whisperErr.join(1000);
         }
     }
 
-    private boolean runProcess(String[] command, int timeoutInMinutes) throws Exception {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                log.debug("[PROCESS - {}]: {}", command[0], line);
+    private static Thread readInBackground(InputStream stream, AtomicReference<String> output) {
+        Thread reader = new Thread(() -> {
+            try (stream) {
+                output.set(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.debug("Stopped reading whisper output: {}", e.getMessage());
             }
-        }
-
-        if (!process.waitFor(timeoutInMinutes, TimeUnit.MINUTES)) {
-            process.destroyForcibly();
-            throw new Exception("Process " + command[0] + " hung (timeout " + timeoutInMinutes + " min).");
-        }
-
-        return process.exitValue() == 0;
+        }, "process-stdout");
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
     }
 
-    private String runProcessAndGetOutput(String[] command, int timeoutInMinutes) throws Exception {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        Process process = processBuilder.start();
-
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+    private static Thread drainInBackground(InputStream stream, String processName) {
+        Thread drainer = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.debug("[PROCESS-ERR - {}]: {}", processName, line);
+                }
+            } catch (IOException ignored) {
             }
-        }
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                log.warn("[PROCESS-ERR - {}]: {}", command[0], line);
-            }
-        }
-
-        if (!process.waitFor(timeoutInMinutes, TimeUnit.MINUTES)) {
-            process.destroyForcibly();
-            throw new Exception("Process " + command[0] + " hung (timeout " + timeoutInMinutes + " min).");
-        }
-
-        if (process.exitValue() != 0) {
-            log.error("Process {} exited with error code {}. Output: {}", command[0], process.exitValue(), output);
-            throw new Exception("Error while executing " + command[0]);
-        }
+        }, "process-stderr");
+        drainer.setDaemon(true);
+        drainer.start();
+        return drainer;
+    }
 
-        return output.toString();
+    private long maxBytes() {
+        return (long) maxFileSizeMb * 1024L * 1024L;
     }
 }
@@ -0,0 +1,21 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.UserMessage;
+
+/**
+ * A user message with retrieved material appended by {@link RetrievalContentInjector}. It keeps the student's own
+ * message, so chat memory can store that and send the augmented text to the model only on the current turn.
+ */
+public class AugmentedUserMessage extends UserMessage {
+
+    private final UserMessage original;
+
+    AugmentedUserMessage(UserMessage augmented, UserMessage original) {
+        super(augmented.contents());
+        this.original = original;
+    }
+
+    public UserMessage original() {
+        return original;
+    }
+}
@@ -1,25 +1,31 @@
 package com.xadazhii.backend.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
-import lombok.Data;
-import lombok.Getter;
-import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,15 +33,26 @@ import java.util.regex.Pattern;
 public class ChatAiService {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatAiService.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Патерн шукає букву (A-Z) за якою може йти ) або . або нічого. Compiled once, it runs on every testing turn.
+    private static final Pattern CHOICE_PATTERN = Pattern.compile("^([A-Z])[).]?$");
 
     private final ChatLanguageModel chatModel;
-    private final ChatMemoryProvider chatMemoryProvider;
+    private final ChatLanguageModel testingChatModel;
+    private final StreamingChatLanguageModel streamingChatModel;
+    private final ChatMemoryRegistry chatMemories;
     private final EmbeddingStore<TextSegment> embeddingStore;
-    private final EmbeddingModel embeddingModel;
+    private final QueryEmbeddingCache queryEmbeddingCache;
 
     private TitleGenerator titleGenerator;
-    private final Map<String, ChatSessionState> sessions = new HashMap<>();
+    private TutorAssistant explanationAssistant;
+    private TutorAssistant testingAssistant;
+    private StreamingTutorAssistant streamingExplanationAssistant;
+    private final ChatSessionStore sessionStore;
+    private final SemanticAnswerCache answerCache;
+    private final TestingQuestionGenerator questionGenerator;
+    private final QuestionPool questionPool;
+    private final MeterRegistry meterRegistry;
+    private final int questionHistorySize;
 
     interface TitleGenerator {
         @SystemMessage("Generate a short title (max 5 words) for this prompt. Return ONLY the title.")
@@ -46,14 +63,34 @@ public class ChatAiService {
         String chat(@MemoryId String chatId, @UserMessage String userMessage);
     }
 
+    interface StreamingTutorAssistant {
+        TokenStream chat(@MemoryId String chatId, @UserMessage String userMessage);
+    }
+
     public ChatAiService(ChatLanguageModel chatModel,
-                         ChatMemoryProvider chatMemoryProvider,
+                         @Qualifier("testingChatModel") ChatLanguageModel testingChatModel,
+                         StreamingChatLanguageModel streamingChatModel,
+                         ChatMemoryRegistry chatMemories,
                          EmbeddingStore<TextSegment> embeddingStore,
-                         EmbeddingModel embeddingModel) {
+                         QueryEmbeddingCache queryEmbeddingCache,
+                         ChatSessionStore sessionStore,
+                         SemanticAnswerCache answerCache,
+                         TestingQuestionGenerator questionGenerator,
+                         QuestionPool questionPool,
+                         MeterRegistry meterRegistry,
+                         @Value("${testing.duplicate-question.history-size:50}") int questionHistorySize) {
         this.chatModel = chatModel;
-        this.chatMemoryProvider = chatMemoryProvider;
+        this.testingChatModel = testingChatModel;
+        this.streamingChatModel = streamingChatModel;
+        this.chatMemories = chatMemories;
         this.embeddingStore = embeddingStore;
-        this.embeddingModel = embeddingModel;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.sessionStore = sessionStore;
+        this.answerCache = answerCache;
+        this.questionGenerator = questionGenerator;
+        this.questionPool = questionPool;
+        this.meterRegistry = meterRegistry;
+        this.questionHistorySize = questionHistorySize;
     }
 
     @PostConstruct
@@ -61,56 +98,159 @@ public class ChatAiService {
         this.titleGenerator = AiServices.builder(TitleGenerator.class)
                 .chatLanguageModel(this.chatModel)
                 .build();
-    }
-
-    @Data
-    private static class AiTestingResponse {
-        private String evaluation;
-        private String feedback;
-        private String question;
-        private List<String> options;
-        private String type;
-        private Integer correctOptionIndex;
-    }
 
-    private TutorAssistant buildAssistantForChat(String chatId, String mode) {
-        ChatAwareContentRetriever dynamicRetriever = new ChatAwareContentRetriever(
+        // One proxy per mode, shared by all chats: the retriever resolves the chat from the @MemoryId.
+        ChatAwareContentRetriever explanationRetriever = new ChatAwareContentRetriever(
                 embeddingStore,
-                embeddingModel,
-                chatId,
+                queryEmbeddingCache,
                 10,
-                0.0
+                0.0,
+                meterRegistry,
+                "explanation"
         );
+        ChatAwareContentRetriever testingRetriever = new ChatAwareContentRetriever(
+                embeddingStore, queryEmbeddingCache, 10, 0.0, meterRegistry, "testing");
+        this.explanationAssistant = buildAssistant("explanation", chatModel, explanationRetriever);
+        this.testingAssistant = buildAssistant("testing", testingChatModel, testingRetriever);
+        this.streamingExplanationAssistant = buildStreamingAssistant("explanation", explanationRetriever);
+    }
 
-        String systemMessage = ("testing".equals(mode))
-                ? getTestingModeJsonSystemMessage()
+    private String systemMessageForMode(String mode) {
+        return ("testing".equals(mode))
+                ? TestingPrompts.SYSTEM_MESSAGE
                 : getExplanationModeSystemMessage();
+    }
+
+    // The injector marks augmented messages, so chat memory keeps the student's text without the retrieved segments.
+    private static RetrievalAugmentor augmentorFor(ChatAwareContentRetriever retriever) {
+        return DefaultRetrievalAugmentor.builder()
+                .contentRetriever(retriever)
+                .contentInjector(new RetrievalContentInjector())
+                .build();
+    }
+
+    // Testing JSON turns and explanation turns are kept apart; the streaming and blocking explanation
+    // assistants share one memory per chat.
+    private TutorAssistant buildAssistant(String mode, ChatLanguageModel model, ChatAwareContentRetriever retriever) {
+        String systemMessage = systemMessageForMode(mode);
 
         return AiServices.builder(TutorAssistant.class)
-                .chatLanguageModel(this.chatModel)
-                .chatMemoryProvider(this.chatMemoryProvider)
-                .contentRetriever(dynamicRetriever)
+                .chatLanguageModel(model)
+                .chatMemoryProvider(chatMemories.viewsForMode(mode))
+                .retrievalAugmentor(augmentorFor(retriever))
+                .systemMessageProvider(memoryId -> systemMessage)
+                .build();
+    }
+
+    private StreamingTutorAssistant buildStreamingAssistant(String mode, ChatAwareContentRetriever retriever) {
+        String systemMessage = systemMessageForMode(mode);
+
+        return AiServices.builder(StreamingTutorAssistant.class)
+                .streamingChatLanguageModel(this.streamingChatModel)
+                .chatMemoryProvider(chatMemories.viewsForMode(mode))
+                .retrievalAugmentor(augmentorFor(retriever))
                 .systemMessageProvider(memoryId -> systemMessage)
                 .build();
     }
 
     public String generateResponseByMode(String chatId, String userMessage, String mode) {
-        ChatSessionState session = sessions.computeIfAbsent(chatId, k -> new ChatSessionState());
-        session.setCurrentMode(mode);
+        long started = System.nanoTime();
+        if ("testing".equals(mode)) {
+            // The whole turn runs under the chat's lock: a second message on the same chat waits
+            // instead of reading a half-updated waitingForAnswer.
+            String reply = ModelCallContext.supply(ModelCallPriority.TESTING, chatId, () ->
+                    sessionStore.withSession(chatId, session -> {
+                        session.setCurrentMode(mode);
+                        return handleTestingLoop(chatId, userMessage, session, testingAssistant);
+                    }));
+            recordResponse(mode, "model", started);
+            return reply;
+        }
 
-        TutorAssistant dynamicAssistant = buildAssistantForChat(chatId, mode);
+        switchMode(chatId, mode);
+        Optional<String> cached = cachedExplanation(chatId, userMessage);
+        if (cached.isPresent()) {
+            recordResponse(mode, "cache", started);
+            return cached.get();
+        }
+
+        String answer = ModelCallContext.supply(ModelCallPriority.INTERACTIVE, chatId,
+                () -> explanationAssistant.chat(chatId, userMessage));
+        answerCache.put(chatId, userMessage, answer);
+        recordResponse(mode, "model", started);
+        return answer;
+    }
+
+    // End-to-end turn latency as the student sees it; model.generation and rag.retrieval.* break it down.
+    private void recordResponse(String mode, String source, long started) {
+        Timer.builder("chat.response")
+                .tag("mode", mode)
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    // A hit is still recorded in the explanation memory, so follow-up questions see the exchange.
+    private Optional<String> cachedExplanation(String chatId, String userMessage) {
+        Optional<String> cached = answerCache.find(chatId, userMessage);
+        cached.ifPresent(answer -> {
+            logger.info("⚡ Answered from the semantic cache (chat {})", chatId);
+            ChatMemory memory = chatMemories.get(chatId + ":explanation");
+            memory.add(dev.langchain4j.data.message.UserMessage.from(userMessage));
+            memory.add(AiMessage.from(answer));
+        });
+        return cached;
+    }
+
+    private void switchMode(String chatId, String mode) {
+        sessionStore.withSession(chatId, session -> {
+            session.setCurrentMode(mode);
+            return null;
+        });
+    }
 
+    public void streamResponseByMode(String chatId, String userMessage, String mode,
+                                     Consumer<String> onToken,
+                                     Consumer<String> onComplete,
+                                     Consumer<Throwable> onError) {
+        // Testing mode has to parse and validate the whole JSON answer, so it is delivered in one piece.
         if ("testing".equals(mode)) {
-            return handleTestingLoop(chatId, userMessage, session, dynamicAssistant);
-        } else {
-            return dynamicAssistant.chat(chatId, userMessage);
+            try {
+                onComplete.accept(generateResponseByMode(chatId, userMessage, mode));
+            } catch (Exception e) {
+                onError.accept(e);
+            }
+            return;
         }
+
+        long started = System.nanoTime();
+        switchMode(chatId, mode);
+        Optional<String> cached = cachedExplanation(chatId, userMessage);
+        if (cached.isPresent()) {
+            recordResponse(mode, "cache", started);
+            onToken.accept(cached.get());
+            onComplete.accept(cached.get());
+            return;
+        }
+
+        // The model slot is taken when the stream starts, so only start() needs the call context.
+        ModelCallContext.run(ModelCallPriority.INTERACTIVE, chatId, () -> streamingExplanationAssistant
+                .chat(chatId, userMessage)
+                .onNext(onToken)
+                .onComplete(response -> {
+                    String answer = response.content().text();
+                    answerCache.put(chatId, userMessage, answer);
+                    recordResponse(mode, "model", started);
+                    onComplete.accept(answer);
+                })
+                .onError(onError)
+                .start());
     }
-    private Integer parseUserChoiceToIndex(String input) {
+
+    static Integer parseUserChoiceToIndex(String input) {
         if (input == null) return null;
         String clean = input.trim().toUpperCase();
-        // Патерн шукає букву (A-Z) за якою може йти ) або . або нічого.
-        Matcher m = Pattern.compile("^([A-Z])[).]?$").matcher(clean);
+        Matcher m = CHOICE_PATTERN.matcher(clean);
         if (m.find()) {
             return m.group(1).charAt(0) - 'A';
         }
@@ -118,131 +258,127 @@ public class ChatAiService {
     }
 
     private String handleTestingLoop(String chatId, String userMessage, ChatSessionState session, TutorAssistant assistant) {
-        String prompt;
-        String basePrompt; // Базовий промт без повідомлення про повтор
-
         // 1. Якщо ми чекаємо на відповідь (тобто це відповідь користувача)
         if (session.isWaitingForAnswer()) {
-            String evaluationPrompt;
-            Integer userChoiceIndex = parseUserChoiceToIndex(userMessage);
+            return evaluateAnswer(chatId, userMessage, session, assistant);
+        }
+        // 2. Якщо ми не чекаємо на відповідь (потрібно згенерувати нове питання)
+        return nextQuestion(chatId, session);
+    }
 
-            if ("MC".equals(session.getLastQuestionType()) && session.getLastCorrectOptionIndex() != null) {
+    private String evaluateAnswer(String chatId, String userMessage, ChatSessionState session, TutorAssistant assistant) {
+        String evaluationPrompt;
+        Integer userChoiceIndex = parseUserChoiceToIndex(userMessage);
 
-                if (userChoiceIndex == null) {
-                    session.setWaitingForAnswer(true);
-                    return "⚠️ Please select a valid option (e.g., A, B, C) or type a progress query.";
-                }
+        if ("MC".equals(session.getLastQuestionType()) && session.getLastCorrectOptionIndex() != null) {
 
-                boolean isCorrect = userChoiceIndex.equals(session.getLastCorrectOptionIndex());
-                String correctLabel = String.valueOf((char) ('A' + session.getLastCorrectOptionIndex()));
-                String userLabel = String.valueOf((char) ('A' + userChoiceIndex));
-
-                evaluationPrompt = String.format(
-                        "PREVIOUS_QUESTION: %s. USER_ANSWER: %s. Evaluate this. IS_CORRECT: %b. CORRECT_OPTION: %s. Generate a FEEDBACK response. The feedback MUST be concise, directly address the PREVIOUS_QUESTION, and explain the concept of the correct option.",
-                        session.getLastQuestionText(), userLabel, isCorrect, correctLabel
-                );
-            } else {
-                // Відкрите питання (OPEN)
-                evaluationPrompt = "USER_ANSWER: " + userMessage + ". Evaluate this answer based on the previous question context and generate a FEEDBACK response.";
+            if (userChoiceIndex == null ||
+                    (session.getLastOptions() != null && userChoiceIndex >= session.getLastOptions().size())) {
+                session.setWaitingForAnswer(true);
+                return "⚠️ Please select a valid option (e.g., A, B, C) or type a progress query.";
             }
 
-            prompt = evaluationPrompt;
-            basePrompt = null; // Не використовується для оцінювання
-
-        }
-        // 2. Якщо ми не чекаємо на відповідь (потрібно згенерувати нове питання)
-        else {
-            String nextType = session.isNextQuestionOpen() ? "OPEN" : "MC";
-            session.setNextQuestionOpen(!session.isNextQuestionOpen());
+            if (session.getLastOptionExplanations() != null) {
+                AiTestingResponse feedback = gradeLocally(session, userChoiceIndex);
+                updateSessionState(session, feedback);
+                return formatUserResponse(session, feedback);
+            }
 
-            String history = String.join(" | ", session.getQuestionHistory());
+            boolean isCorrect = userChoiceIndex.equals(session.getLastCorrectOptionIndex());
+            String correctLabel = String.valueOf((char) ('A' + session.getLastCorrectOptionIndex()));
+            String userLabel = String.valueOf((char) ('A' + userChoiceIndex));
 
-            // Базовий промт для генерації нового питання
-            basePrompt = String.format(
-                    "GENERATE_QUESTION: Analyze documents and image descriptions. Generate a new question of TYPE: %s. AVOID generating questions identical to or highly similar to these in the history: %s",
-                    nextType, history
+            evaluationPrompt = String.format(
+                    "PREVIOUS_QUESTION: %s. USER_ANSWER: %s. Evaluate this. IS_CORRECT: %b. CORRECT_OPTION: %s. Generate a FEEDBACK response. The feedback MUST be concise, directly address the PREVIOUS_QUESTION, and explain the concept of the correct option.",
+                    session.getLastQuestionText(), userLabel, isCorrect, correctLabel
+            );
+        } else {
+            // Відкрите питання (OPEN). Питання могло прийти з пулу, тому його немає в пам'яті чату.
+            evaluationPrompt = String.format(
+                    "PREVIOUS_QUESTION: %s. USER_ANSWER: %s. Evaluate this answer based on the previous question and generate a FEEDBACK response.",
+                    session.getLastQuestionText(), userMessage
             );
-
-            prompt = basePrompt;
-            session.setLastQuestionType(nextType);
-            session.setLastCorrectOptionIndex(null);
-            session.setLastQuestionText(null);
         }
 
-        // Починається цикл
-        int attempts = 0;
-        int maxAttempts = 5; // Збільшимо спроби, оскільки тепер є жорстка перевірка
+        String prompt = evaluationPrompt;
         String lastError = "";
-
-        while (attempts < maxAttempts) {
+        for (int attempt = 1; attempt <= TestingQuestionGenerator.MAX_ATTEMPTS; attempt++) {
             try {
-                String responseRaw = assistant.chat(chatId, prompt);
-                String cleanJson = responseRaw.replaceAll("```json", "").replaceAll("```", "").trim();
-
-                AiTestingResponse aiResponse = objectMapper.readValue(cleanJson, AiTestingResponse.class);
-
-                String responseType = aiResponse.getType().toUpperCase();
-
-                // *** ЖОРСТКА ПЕРЕВІРКА НА ПОВТОРЕННЯ ПИТАННЯ В JAVA ***
-                if (("MC".equals(responseType) || "OPEN".equals(responseType))) {
-
-                    String newQuestionText = aiResponse.getQuestion();
-                    if (newQuestionText == null || newQuestionText.isEmpty()) {
-                        throw new IllegalArgumentException("Question text is missing.");
-                    }
-
-                    if (session.getQuestionHistory().contains(newQuestionText)) {
-                        // Якщо питання повторюється, кидаємо помилку, щоб викликати повтор циклу
-                        throw new IllegalArgumentException("Question text is a duplicate. AI must generate a unique question.");
-                    }
-
-                    // Якщо не повторюється, зберігаємо та продовжуємо
-                    session.setLastQuestionText(newQuestionText);
-                    if (session.getQuestionHistory().size() >= 10) {
-                        session.getQuestionHistory().remove(0);
-                    }
-                    session.getQuestionHistory().add(newQuestionText);
-                    // ******************************************************
-
-                    if ("MC".equals(responseType)) {
-                        if (aiResponse.getCorrectOptionIndex() == null ||
-                                aiResponse.getCorrectOptionIndex() < 0 ||
-                                aiResponse.getCorrectOptionIndex() >= aiResponse.getOptions().size()) {
-                            throw new IllegalArgumentException("MC question must have a valid correctOptionIndex.");
-                        }
-                        session.setLastCorrectOptionIndex(aiResponse.getCorrectOptionIndex());
-                    } else if ("OPEN".equals(responseType)) {
-                        session.setLastCorrectOptionIndex(null);
-                    }
+                AiTestingResponse aiResponse = AiTestingResponse.fromModelOutput(assistant.chat(chatId, prompt));
+                if (!"FEEDBACK".equalsIgnoreCase(aiResponse.getType())) {
+                    throw new IllegalArgumentException("Expected a FEEDBACK response.");
                 }
+                recordEvaluationAttempt("accepted");
 
                 updateSessionState(session, aiResponse);
                 return formatUserResponse(session, aiResponse);
-
             } catch (Exception e) {
-                logger.warn("Attempt {} failed: {}", attempts + 1, e.getMessage());
+                recordEvaluationAttempt("rejected");
+                logger.warn("Attempt {} failed: {}", attempt, e.getMessage());
                 lastError = e.getMessage();
-                attempts++;
-
-                // Якщо помилка сталася під час генерації нового питання (тобто ми не чекали на відповідь)
-                if (!session.isWaitingForAnswer() && basePrompt != null) {
-                    // Ми перезаписуємо prompt, щоб проінформувати AI про проблему,
-                    // і повторюємо спробу, використовуючи базовий промт.
-                    prompt = basePrompt + String.format(
-                            " (PREVIOUS ATTEMPT FAILED: %s. Generate a different, unique question in strict JSON format.)",
-                            e.getMessage()
-                    );
-                } else if (attempts < maxAttempts) {
-                    // Якщо це помилка парсингу відповіді користувача або загальна помилка JSON,
-                    // ми просто повторюємо спробу, якщо є така можливість.
-                    prompt += " (PREVIOUS ATTEMPT FAILED: Invalid JSON or Data. Ensure strict JSON format).";
-                }
+                prompt += " (PREVIOUS ATTEMPT FAILED: Invalid JSON or Data. Ensure strict JSON format).";
             }
         }
 
         return "⚠️ I encountered an error. Please try again. (Error: " + lastError + ")";
     }
 
+    // MC questions come with an explanation per option, so the answer is graded and explained without a model call.
+    private AiTestingResponse gradeLocally(ChatSessionState session, int userChoiceIndex) {
+        int correctIndex = session.getLastCorrectOptionIndex();
+        List<String> explanations = session.getLastOptionExplanations();
+        boolean isCorrect = userChoiceIndex == correctIndex;
+
+        StringBuilder feedback = new StringBuilder()
+                .append("**").append((char) ('A' + userChoiceIndex)).append(")** ")
+                .append(explanations.get(userChoiceIndex));
+        if (!isCorrect) {
+            feedback.append("\n\nThe correct answer is **").append((char) ('A' + correctIndex)).append(")** ");
+            if (session.getLastOptions() != null) {
+                feedback.append(session.getLastOptions().get(correctIndex)).append(": ");
+            }
+            feedback.append(explanations.get(correctIndex));
+        }
+
+        AiTestingResponse response = new AiTestingResponse();
+        response.setType("FEEDBACK");
+        response.setEvaluation(isCorrect ? "CORRECT" : "INCORRECT");
+        response.setFeedback(feedback.toString());
+        return response;
+    }
+
+    private void recordEvaluationAttempt(String result) {
+        Counter.builder("testing.model.attempts")
+                .tag("stage", "evaluation")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // Served from the chat's question pool when it has one ready, otherwise generated on the spot.
+    private String nextQuestion(String chatId, ChatSessionState session) {
+        String nextType = session.isNextQuestionOpen() ? "OPEN" : "MC";
+        AiTestingResponse question;
+        try {
+            question = questionPool.take(chatId, nextType, session.getQuestionHistory())
+                    .orElseGet(() -> questionGenerator.generate(chatId, nextType, session.getQuestionHistory()));
+        } catch (RuntimeException e) {
+            return "⚠️ I encountered an error. Please try again. (Error: " + e.getMessage() + ")";
+        }
+
+        session.setNextQuestionOpen(!session.isNextQuestionOpen());
+        session.setLastQuestionType(nextType);
+        session.setLastQuestionText(question.getQuestion());
+        session.setLastCorrectOptionIndex(question.getCorrectOptionIndex());
+        session.setLastOptions(question.getOptions());
+        session.setLastOptionExplanations(question.getOptionExplanations());
+        session.recordQuestion(question.getQuestion(), questionHistorySize);
+
+        questionPool.refill(chatId, session.getQuestionHistory());
+        updateSessionState(session, question);
+        return formatUserResponse(session, question);
+    }
+
     // Оновлена логіка: оновлюємо тільки стан очікування відповіді
     private void updateSessionState(ChatSessionState session, AiTestingResponse aiResponse) {
         String responseType = aiResponse.getType().toUpperCase();
@@ -255,7 +391,7 @@ public class ChatAiService {
     }
 
     // Оновлений формат виведення без статистики
-    private String formatUserResponse(ChatSessionState session, AiTestingResponse aiResponse) {
+    static String formatUserResponse(ChatSessionState session, AiTestingResponse aiResponse) {
         StringBuilder sb = new StringBuilder();
         String responseType = aiResponse.getType().toUpperCase();
 
@@ -296,50 +432,6 @@ public class ChatAiService {
     }
 
 
-    private String getTestingModeJsonSystemMessage() {
-        return """
-            You are a strict AI Tutor API. Analyze uploaded documents AND image descriptions to conduct a test.
-            
-            CONTEXT INSTRUCTION:
-            Use the provided context (text files AND image descriptions) to generate relevant questions and evaluate user answers.
-            
-            RESPONSE FORMAT:
-            You MUST output ONLY valid JSON. No markdown outside JSON.
-            
-            JSON SCHEMA:
-            {
-              "evaluation": "CORRECT" | "INCORRECT" | null,
-              "feedback": "Clear, concise explanation for the user's answer. MUST be relevant to the question topic. Or null if it is a new question.",
-              "question": "Text of the NEW question or null if it is feedback.",
-              "type": "MC" | "OPEN" | "FEEDBACK",
-              "options": ["Option 1", "Option 2"] | null,
-              "correctOptionIndex": 0 | null
-            }
-            
-            LOGIC RULES:
-            1. If "GENERATE_QUESTION":
-               - **Purpose:** To generate a new question (either MC or OPEN).
-               - **Focus:** The question and options MUST be directly based on the uploaded materials.
-               - **CRITICAL FILTERING:** ABSOLUTELY DO NOT REPEAT OR GENERATE QUESTIONS THAT ARE IDENTICAL IN MEANING OR WORDING TO ANY QUESTION IN THE PROVIDED HISTORY.
-               - "evaluation": null.
-               - "feedback": null.
-               - "question": "New question text".
-               - "type": "MC" or "OPEN".
-               - "options": List of 3-4 options if "MC", else null.
-               - "correctOptionIndex": Index (0-based) of correct option. MUST be accurate for the given question/options if "MC", else null.
-               
-            2. If "USER_ANSWER":
-               - **Purpose:** To evaluate the user's answer (which is an option letter A, B, C... or text).
-               - **Evaluation:** Determine correctness based on the PREVIOUS question's context and the correct answer index.
-               - "evaluation": "CORRECT" or "INCORRECT".
-               - "feedback": **CRITICAL: The feedback MUST directly explain the correct answer to the PREVIOUS question and why the user's choice was correct or incorrect.** DO NOT mention 'main method' if the question was about 'access modifiers'.
-               - "question": null.
-               - "type": "FEEDBACK".
-               - "options": null.
-               - "correctOptionIndex": null.
-            """;
-    }
-
     private String getExplanationModeSystemMessage() {
         return """
             You are an AI Tutor. Answer based on the uploaded materials and their descriptions in this chat.
@@ -357,21 +449,10 @@ public class ChatAiService {
 
     public String generateTitleForChat(String userMessage) {
         try {
-            return titleGenerator.generateTitle(userMessage).replace("\"", "").trim();
+            return ModelCallContext.supply(ModelCallPriority.TITLE, null,
+                    () -> titleGenerator.generateTitle(userMessage).replace("\"", "").trim());
         } catch (Exception e) {
             return "New Chat";
         }
     }
-
-    @Getter
-    @Setter
-    private static class ChatSessionState {
-        private String currentMode = "explanation";
-        private boolean waitingForAnswer = false;
-        private boolean nextQuestionOpen = false;
-        private String lastQuestionType = null;
-        private Integer lastCorrectOptionIndex = null;
-        private String lastQuestionText = null;
-        private List<String> questionHistory = new java.util.ArrayList<>();
-    }
-}
\ No newline at end of file
+}
@@ -1,67 +1,99 @@
 package com.xadazhii.backend.service;
 
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.data.embedding.Embedding; // Перевірте імпорт
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.List;
 import java.util.stream.Collectors;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
 
 public class ChatAwareContentRetriever implements ContentRetriever {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatAwareContentRetriever.class);
 
     private final EmbeddingStore<TextSegment> embeddingStore;
-    private final EmbeddingModel embeddingModel;
+    private final QueryEmbeddingCache queryEmbeddingCache;
     private final int maxResults;
     private final double minScore;
-    private final String chatId;
 
+    private final Timer embeddingTimer;
+    private final Timer searchTimer;
+    private final DistributionSummary candidates;
+    private final DistributionSummary kept;
+
+    // The mode tags this retriever's metrics, so explanation and testing retrieval can be told apart.
     public ChatAwareContentRetriever(EmbeddingStore<TextSegment> embeddingStore,
-                                     EmbeddingModel embeddingModel,
-                                     String chatId,
+                                     QueryEmbeddingCache queryEmbeddingCache,
                                      int maxResults,
-                                     double minScore) {
+                                     double minScore,
+                                     MeterRegistry meterRegistry,
+                                     String mode) {
         this.embeddingStore = embeddingStore;
-        this.embeddingModel = embeddingModel;
-        this.chatId = chatId;
+        this.queryEmbeddingCache = queryEmbeddingCache;
         this.maxResults = maxResults;
         this.minScore = minScore;
+
+        this.embeddingTimer = Timer.builder("rag.retrieval.embedding")
+                .description("Query embedding, including the embedding cache lookup")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        this.searchTimer = Timer.builder("rag.retrieval.search")
+                .description("Similarity search in the chat's partition")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        this.candidates = DistributionSummary.builder("rag.retrieval.candidates")
+                .description("Segments of the chat scored by a search")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        this.kept = DistributionSummary.builder("rag.retrieval.kept")
+                .description("Segments returned to the prompt")
+                .tag("mode", mode)
+                .register(meterRegistry);
     }
 
     @Override
     public List<Content> retrieve(Query query) {
-        logger.info("🔍 RETRIEVING for ChatID: '{}' | Query: '{}'", chatId, query.text());
+        // Assistants are shared between chats; the chat is identified by the memory id of the current call.
+        if (query.metadata() == null || query.metadata().chatMemoryId() == null) {
+            logger.warn("⚠️ Query without chat memory id, skipping retrieval: '{}'", query.text());
+            return List.of();
+        }
+        String chatId = query.metadata().chatMemoryId().toString();
 
-        Embedding queryEmbedding = embeddingModel.embed(query.text()).content();
-
-        List<EmbeddingMatch<TextSegment>> matches = embeddingStore.findRelevant(
-                queryEmbedding,
-                maxResults * 100,
-                minScore
-        );
+        logger.info("🔍 RETRIEVING for ChatID: '{}' | Query: '{}'", chatId, query.text());
 
-        logger.info("📊 Database found {} potential candidates (before filter)", matches.size());
+        Embedding queryEmbedding = embeddingTimer.record(() -> queryEmbeddingCache.embed(query.text()));
 
-        List<Content> filteredContent = matches.stream()
-                .filter(match -> {
-                    TextSegment segment = match.embedded();
-                    if (segment == null || segment.metadata() == null) return false;
+        EmbeddingSearchRequest searchRequest = EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .filter(metadataKey(ChatPartitionedEmbeddingStore.CHAT_ID_KEY).isEqualTo(chatId))
+                .build();
 
-                    String segmentChatId = segment.metadata().getString("chatId");
-                    return chatId.equals(segmentChatId);
-                })
-                .limit(maxResults)
+        List<Content> filteredContent = searchTimer.record(() -> embeddingStore.search(searchRequest)).matches().stream()
                 .map(EmbeddingMatch::embedded)
                 .map(Content::from)
                 .collect(Collectors.toList());
 
+        if (embeddingStore instanceof ChatPartitionedEmbeddingStore partitioned) {
+            int scored = partitioned.segmentCount(chatId);
+            if (scored >= 0) {
+                candidates.record(scored);
+            }
+        }
+        kept.record(filteredContent.size());
+
         logger.info("✅ FINAL: Found {} relevant segments for THIS chat.", filteredContent.size());
 
         return filteredContent;
@@ -0,0 +1,88 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the chat memories behind the AI services. AiServices keeps every memory its provider returns for the life
+ * of the proxy, so it is only handed views that hold a memory id; the memories themselves live in a bounded LRU
+ * here and are dropped when their chat is deleted.
+ */
+@Service
+public class ChatMemoryRegistry {
+
+    private final ChatMemoryProvider chatMemoryProvider;
+    private final int maxEntries;
+    private final Map<String, ChatMemory> memories;
+
+    public ChatMemoryRegistry(ChatMemoryProvider chatMemoryProvider,
+                              @Value("${chat.memory.cache-entries:500}") int maxEntries) {
+        this.chatMemoryProvider = chatMemoryProvider;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.memories = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatMemory> eldest) {
+                return size() > ChatMemoryRegistry.this.maxEntries;
+            }
+        };
+    }
+
+    // Memory ids are "<chatId>:<mode>", so each mode keeps its own window per chat.
+    public ChatMemory get(String memoryId) {
+        synchronized (memories) {
+            return memories.computeIfAbsent(memoryId, chatMemoryProvider::get);
+        }
+    }
+
+    public ChatMemoryProvider viewsForMode(String mode) {
+        return chatId -> new ChatMemoryView(chatId + ":" + mode);
+    }
+
+    public void evictChat(String chatId) {
+        String prefix = chatId + ":";
+        synchronized (memories) {
+            memories.keySet().removeIf(memoryId -> memoryId.startsWith(prefix));
+        }
+    }
+
+    int size() {
+        synchronized (memories) {
+            return memories.size();
+        }
+    }
+
+    private final class ChatMemoryView implements ChatMemory {
+
+        private final String memoryId;
+
+        ChatMemoryView(String memoryId) {
+            this.memoryId = memoryId;
+        }
+
+        @Override
+        public Object id() {
+            return memoryId;
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            get(memoryId).add(message);
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            return get(memoryId).messages();
+        }
+
+        @Override
+        public void clear() {
+            get(memoryId).clear();
+        }
+    }
+}
@@ -1,19 +1,52 @@
 package com.xadazhii.backend.service;
 
+import com.xadazhii.backend.dto.MessagePage;
 import com.xadazhii.backend.entity.ChatMessage;
 import com.xadazhii.backend.repository.ChatMessageRepository;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import java.util.List;
 
 @Service
 public class ChatMessageService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageWriter chatMessageWriter;
 
-    public ChatMessageService(ChatMessageRepository chatMessageRepository) {
+    public ChatMessageService(ChatMessageRepository chatMessageRepository, ChatMessageWriter chatMessageWriter) {
         this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageWriter = chatMessageWriter;
     }
 
     public void save(ChatMessage message) {
         chatMessageRepository.save(message);
     }
-}
\ No newline at end of file
+
+    // Queued for the write-behind writer; the chat's existing messages are never loaded.
+    public void append(String chatId, String text, boolean modelMessage) {
+        chatMessageWriter.append(new ChatMessage(chatId, text, modelMessage));
+    }
+
+    public MessagePage page(String chatId, Long before, Integer limit) {
+        // Read-your-writes: messages accepted by append() are visible to the next page request.
+        if (chatMessageWriter.hasPending()) {
+            chatMessageWriter.flush();
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // One extra row tells whether an older page exists without a count query.
+        Limit fetch = Limit.of(pageSize + 1);
+        List<ChatMessage> rows = before == null
+                ? chatMessageRepository.findByChatIdOrderByIdDesc(chatId, fetch)
+                : chatMessageRepository.findByChatIdAndIdLessThanOrderByIdDesc(chatId, before, fetch);
+
+        if (rows.size() <= pageSize) {
+            return new MessagePage(rows, null);
+        }
+        List<ChatMessage> page = rows.subList(0, pageSize);
+        return new MessagePage(List.copyOf(page), page.get(pageSize - 1).getId());
+    }
+}
@@ -0,0 +1,157 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.entity.ChatMessage;
+import com.xadazhii.backend.repository.ChatMessageRepository;
+import com.xadazhii.backend.repository.ChatRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only, write-behind writer for chat messages. Messages from all chats are queued and flushed
+ * together: one transaction per flush, inserts grouped into JDBC batches, one activity update per chat.
+ */
+@Service
+public class ChatMessageWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatRepository chatRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean async;
+    private final int batchSize;
+    private final long flushIntervalMs;
+
+    private final BlockingQueue<ChatMessage> queue;
+    // Held while draining and persisting, so batches reach the database in queue order (ids stay chronological).
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread flusher;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    public ChatMessageWriter(ChatMessageRepository chatMessageRepository,
+                             ChatRepository chatRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${chat.message-writer.async:true}") boolean async,
+                             @Value("${chat.message-writer.batch-size:50}") int batchSize,
+                             @Value("${chat.message-writer.flush-interval-ms:50}") long flushIntervalMs,
+                             @Value("${chat.message-writer.queue-capacity:1000}") int queueCapacity) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatRepository = chatRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.async = async;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        this.flusher = new Thread(this::flushLoop, "chat-message-writer");
+        this.flusher.setDaemon(true);
+        if (async) {
+            this.flusher.start();
+        }
+    }
+
+    public void append(ChatMessage message) {
+        if (!running) {
+            throw new IllegalStateException("Chat message writer is shut down");
+        }
+        // A full queue applies back-pressure: the caller flushes what is queued and tries again.
+        while (!queue.offer(message)) {
+            flush();
+        }
+        if (!async) {
+            flush();
+        }
+    }
+
+    public boolean hasPending() {
+        return !queue.isEmpty();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                List<ChatMessage> batch = new ArrayList<>(batchSize);
+                if (queue.drainTo(batch, batchSize) == 0) {
+                    return;
+                }
+                persist(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                if (stopped.await(flushIntervalMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("❌ Background flush of chat messages failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void persist(List<ChatMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeBatch(batch));
+            log.debug("Flushed {} chat messages", batch.size());
+        } catch (RuntimeException e) {
+            // Fall back to one transaction per message so a single bad row does not lose the whole batch.
+            log.warn("Batch insert of {} chat messages failed, retrying one by one: {}", batch.size(), e.getMessage());
+            for (ChatMessage message : batch) {
+                message.setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeBatch(List.of(message)));
+                } catch (RuntimeException single) {
+                    log.error("❌ Dropping chat message for chat {}: {}", message.getChatId(), single.getMessage(), single);
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<ChatMessage> batch) {
+        chatMessageRepository.saveAll(batch);
+
+        Map<String, Integer> addedPerChat = new LinkedHashMap<>();
+        for (ChatMessage message : batch) {
+            addedPerChat.merge(message.getChatId(), 1, Integer::sum);
+        }
+        Instant now = Instant.now();
+        addedPerChat.forEach((chatId, added) -> chatRepository.recordActivity(chatId, added, now));
+    }
+
+    // Runs before the repositories and the DataSource are destroyed, so nothing that was accepted is lost.
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        stopped.countDown();
+        flusher.join(5000);
+        flush();
+        log.info("🗄️ Chat message writer stopped, queue drained");
+    }
+}
@@ -0,0 +1,212 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Embedding store that keeps one partition per chat, keyed by the "chatId" metadata of each segment.
+ * A search filtered by chatId only scores the segments of that chat.
+ */
+public class ChatPartitionedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatPartitionedEmbeddingStore.class);
+
+    public static final String CHAT_ID_KEY = "chatId";
+    private static final String UNASSIGNED_PARTITION = "_unassigned";
+
+    private final Map<String, EmbeddingStore<TextSegment>> partitions = new ConcurrentHashMap<>();
+    private final Function<String, EmbeddingStore<TextSegment>> partitionFactory;
+
+    public ChatPartitionedEmbeddingStore() {
+        this(chatId -> new InMemoryEmbeddingStore<>());
+    }
+
+    public ChatPartitionedEmbeddingStore(Function<String, EmbeddingStore<TextSegment>> partitionFactory) {
+        this.partitionFactory = partitionFactory;
+    }
+
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    // Number of segments a search of this chat scores, or -1 when the partition type cannot tell.
+    public int segmentCount(String chatId) {
+        EmbeddingStore<TextSegment> partition = partitions.get(chatId);
+        if (partition == null) {
+            return 0;
+        }
+        return partition instanceof MappedEmbeddingStore mapped ? mapped.size() : -1;
+    }
+
+    public void openPartition(String chatId) {
+        partition(chatId);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return partition(UNASSIGNED_PARTITION).add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        partition(UNASSIGNED_PARTITION).add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return partition(chatIdOf(segment)).add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return partition(UNASSIGNED_PARTITION).addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+
+        // Ingestion normally carries a single chatId, but group anyway so mixed batches stay correct.
+        Map<String, List<Integer>> indicesByChat = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            indicesByChat.computeIfAbsent(chatIdOf(segments.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        String[] ids = new String[embeddings.size()];
+        indicesByChat.forEach((chatId, indices) -> {
+            List<Embedding> groupEmbeddings = new ArrayList<>(indices.size());
+            List<TextSegment> groupSegments = new ArrayList<>(indices.size());
+            for (int index : indices) {
+                groupEmbeddings.add(embeddings.get(index));
+                groupSegments.add(segments.get(index));
+            }
+
+            List<String> groupIds = partition(chatId).addAll(groupEmbeddings, groupSegments);
+            for (int i = 0; i < indices.size(); i++) {
+                ids[indices.get(i)] = groupIds.get(i);
+            }
+            logger.debug("Stored {} segments in partition '{}'", indices.size(), chatId);
+        });
+
+        return List.of(ids);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        partitions.values().forEach(partition -> partition.removeAll(ids));
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        String chatId = chatIdFrom(filter);
+        if (chatId != null) {
+            EmbeddingStore<TextSegment> removed = partitions.remove(chatId);
+            if (removed != null) {
+                discard(removed);
+            }
+            return;
+        }
+        partitions.values().forEach(partition -> partition.removeAll(filter));
+    }
+
+    @Override
+    public void removeAll() {
+        partitions.values().forEach(ChatPartitionedEmbeddingStore::discard);
+        partitions.clear();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        String chatId = chatIdFrom(request.filter());
+
+        if (chatId != null) {
+            EmbeddingStore<TextSegment> partition = partitions.get(chatId);
+            if (partition == null) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            // The partition already holds only this chat, so the metadata filter is redundant.
+            return partition.search(new EmbeddingSearchRequest(
+                    request.queryEmbedding(), request.maxResults(), request.minScore(), null));
+        }
+
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>();
+        for (EmbeddingStore<TextSegment> partition : partitions.values()) {
+            merged.addAll(partition.search(request).matches());
+        }
+        merged.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+
+        return new EmbeddingSearchResult<>(merged.size() > request.maxResults()
+                ? new ArrayList<>(merged.subList(0, request.maxResults()))
+                : merged);
+    }
+
+    @Override
+    public void close() {
+        partitions.values().forEach(ChatPartitionedEmbeddingStore::closeQuietly);
+        partitions.clear();
+    }
+
+    // A dropped partition is closed and, when it lives on disk, its directory is deleted with it.
+    private static void discard(EmbeddingStore<TextSegment> partition) {
+        if (partition instanceof MappedEmbeddingStore mapped) {
+            try {
+                mapped.delete();
+            } catch (IOException e) {
+                logger.warn("Failed to delete embedding partition: {}", e.getMessage());
+            }
+            return;
+        }
+        partition.removeAll();
+        closeQuietly(partition);
+    }
+
+    private static void closeQuietly(EmbeddingStore<TextSegment> partition) {
+        if (partition instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close embedding partition: {}", e.getMessage());
+            }
+        }
+    }
+
+    private EmbeddingStore<TextSegment> partition(String chatId) {
+        return partitions.computeIfAbsent(chatId, partitionFactory);
+    }
+
+    private static String chatIdOf(TextSegment segment) {
+        if (segment == null || segment.metadata() == null) {
+            return UNASSIGNED_PARTITION;
+        }
+        String chatId = segment.metadata().getString(CHAT_ID_KEY);
+        return chatId != null ? chatId : UNASSIGNED_PARTITION;
+    }
+
+    private static String chatIdFrom(Filter filter) {
+        if (filter instanceof IsEqualTo isEqualTo && CHAT_ID_KEY.equals(isEqualTo.key())) {
+            return String.valueOf(isEqualTo.comparisonValue());
+        }
+        return null;
+    }
+}
@@ -1,17 +1,57 @@
 package com.xadazhii.backend.service;
 
+import com.xadazhii.backend.dto.ChatSummary;
 import com.xadazhii.backend.entity.Chat;
+import com.xadazhii.backend.repository.ChatMessageRepository;
 import com.xadazhii.backend.repository.ChatRepository;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
 @Service
 public class ChatService {
 
+    public static final int MAX_SUMMARY_PAGE_SIZE = 500;
+
     private final ChatRepository chatRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatSessionStore chatSessionStore;
+    private final PersistentChatMemoryStore chatMemoryStore;
+    private final ChatMemoryRegistry chatMemories;
+    private final SemanticAnswerCache answerCache;
+    private final QuestionPool questionPool;
+    private final QuestionSimilarityIndex questionSimilarityIndex;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final UploadJobService uploadJobService;
 
-    public ChatService(ChatRepository chatRepository) {
+    public ChatService(ChatRepository chatRepository,
+                       ChatMessageRepository chatMessageRepository,
+                       ChatMessageWriter chatMessageWriter,
+                       ChatSessionStore chatSessionStore,
+                       PersistentChatMemoryStore chatMemoryStore,
+                       ChatMemoryRegistry chatMemories,
+                       SemanticAnswerCache answerCache,
+                       QuestionPool questionPool,
+                       QuestionSimilarityIndex questionSimilarityIndex,
+                       EmbeddingStore<TextSegment> embeddingStore,
+                       UploadJobService uploadJobService) {
         this.chatRepository = chatRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageWriter = chatMessageWriter;
+        this.chatSessionStore = chatSessionStore;
+        this.chatMemoryStore = chatMemoryStore;
+        this.chatMemories = chatMemories;
+        this.answerCache = answerCache;
+        this.questionPool = questionPool;
+        this.questionSimilarityIndex = questionSimilarityIndex;
+        this.embeddingStore = embeddingStore;
+        this.uploadJobService = uploadJobService;
     }
 
     public Chat getOrCreateNewChat(String chatId) {
@@ -27,7 +67,20 @@ public class ChatService {
         });
     }
 
+    @Transactional
     public void deleteById(String chatId) {
+        // Uploads still running for this chat must not recreate its partition or post messages after the delete.
+        uploadJobService.cancelChat(chatId);
+        // Queued messages of this chat must not be inserted after its rows are gone.
+        chatMessageWriter.flush();
+        chatMessageRepository.deleteByChatId(chatId);
+        chatSessionStore.remove(chatId);
+        chatMemories.evictChat(chatId);
+        chatMemoryStore.deleteChat(chatId);
+        answerCache.invalidate(chatId);
+        questionPool.remove(chatId);
+        questionSimilarityIndex.remove(chatId);
+        embeddingStore.removeAll(metadataKey(ChatPartitionedEmbeddingStore.CHAT_ID_KEY).isEqualTo(chatId));
         chatRepository.deleteById(chatId);
     }
 
@@ -39,4 +92,8 @@ public class ChatService {
     public List<Chat> findAll() {
         return chatRepository.findAll();
     }
-}
\ No newline at end of file
+
+    public List<ChatSummary> findSummaries(int page, int size) {
+        return chatRepository.findSummaries(PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_SUMMARY_PAGE_SIZE))));
+    }
+}
@@ -0,0 +1,32 @@
+package com.xadazhii.backend.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Mutable per-chat testing state. Only touched inside ChatSessionStore.withSession, under the chat's lock.
+@Getter
+@Setter
+class ChatSessionState {
+    private String currentMode = "explanation";
+    private boolean waitingForAnswer = false;
+    private boolean nextQuestionOpen = false;
+    private String lastQuestionType = null;
+    private Integer lastCorrectOptionIndex = null;
+    private String lastQuestionText = null;
+    private List<String> lastOptions = null;
+    // One explanation per option of the last MC question; null when the model did not provide them.
+    private List<String> lastOptionExplanations = null;
+    // The most recent questions asked in this chat, oldest first; near-duplicates are rejected against them.
+    private List<String> questionHistory = new ArrayList<>();
+
+    // Keeps only the newest maxHistory questions, so the persisted state and each duplicate check stay bounded.
+    void recordQuestion(String question, int maxHistory) {
+        questionHistory.add(question);
+        int excess = questionHistory.size() - Math.max(1, maxHistory);
+        if (excess > 0) {
+            questionHistory.subList(0, excess).clear();
+        }
+    }
+}
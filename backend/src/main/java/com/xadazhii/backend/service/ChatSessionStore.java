@@ -0,0 +1,187 @@
+package com.xadazhii.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xadazhii.backend.entity.ChatSession;
+import com.xadazhii.backend.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Testing-session state per chat: a bounded, expiring in-memory cache in front of the chat_session table.
+ * All access goes through {@link #withSession}, which serializes work on the same chat with a per-chat lock
+ * and writes the state back to Postgres whenever it changed, so sessions survive restarts.
+ */
+@Service
+public class ChatSessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatSessionStore.class);
+
+    private final ChatSessionRepository repository;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Kept apart from the cache, so evicting an entry can never hand out a second lock for a chat. A testing turn
+    // holds its chat's lock during the model call, so the lock must not be shared with other chats. An entry lives
+    // only while some thread holds or waits for it, so the map is bounded by in-flight turns, not by chats seen.
+    private final ConcurrentHashMap<String, ChatLock> locks = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final class ChatLock {
+        final ReentrantLock lock = new ReentrantLock();
+        int users; // holders and waiters; only changed inside locks.compute
+    }
+
+    private static final class Cached {
+        final ChatSessionState state;
+        String persistedJson;
+        long lastAccessNanos;
+
+        Cached(ChatSessionState state, String persistedJson) {
+            this.state = state;
+            this.persistedJson = persistedJson;
+        }
+    }
+
+    public ChatSessionStore(ChatSessionRepository repository,
+                            MeterRegistry meterRegistry,
+                            @Value("${testing.sessions.max-entries:1000}") int maxEntries,
+                            @Value("${testing.sessions.ttl-minutes:60}") long ttlMinutes) {
+        this.repository = repository;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = Duration.ofMinutes(Math.max(1, ttlMinutes)).toNanos();
+
+        Gauge.builder("testing.sessions.cached", this, ChatSessionStore::cachedCount)
+                .register(meterRegistry);
+    }
+
+    public <T> T withSession(String chatId, Function<ChatSessionState, T> action) {
+        ChatLock lock = lock(chatId);
+        try {
+            Cached cached = load(chatId);
+            try {
+                return action.apply(cached.state);
+            } finally {
+                persistIfChanged(chatId, cached);
+            }
+        } finally {
+            unlock(chatId, lock);
+        }
+    }
+
+    public void remove(String chatId) {
+        ChatLock lock = lock(chatId);
+        try {
+            synchronized (cache) {
+                cache.remove(chatId);
+            }
+            repository.deleteById(chatId);
+        } finally {
+            unlock(chatId, lock);
+        }
+    }
+
+    private ChatLock lock(String chatId) {
+        ChatLock chatLock = locks.compute(chatId, (id, existing) -> {
+            ChatLock registered = existing != null ? existing : new ChatLock();
+            registered.users++;
+            return registered;
+        });
+        chatLock.lock.lock();
+        return chatLock;
+    }
+
+    // The entry is dropped only when nobody else holds or waits for it, so a queued thread never ends up on a
+    // different lock than the one a newcomer would get.
+    private void unlock(String chatId, ChatLock chatLock) {
+        chatLock.lock.unlock();
+        locks.computeIfPresent(chatId, (id, existing) -> --existing.users == 0 ? null : existing);
+    }
+
+    int lockCount() {
+        return locks.size();
+    }
+
+    public int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private Cached load(String chatId) {
+        long now = System.nanoTime();
+        synchronized (cache) {
+            evictExpired(now);
+            Cached cached = cache.get(chatId);
+            if (cached != null) {
+                cached.lastAccessNanos = now;
+                return cached;
+            }
+        }
+
+        Cached loaded = repository.findById(chatId)
+                .flatMap(this::deserialize)
+                .orElseGet(() -> new Cached(new ChatSessionState(), null));
+        loaded.lastAccessNanos = now;
+
+        synchronized (cache) {
+            cache.put(chatId, loaded);
+            // Evicted sessions are already persisted, so dropping them only costs a reload.
+            Iterator<Map.Entry<String, Cached>> eldest = cache.entrySet().iterator();
+            while (cache.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return loaded;
+    }
+
+    // Access order puts the least recently used entries first, so the expired ones form a prefix.
+    private void evictExpired(long now) {
+        Iterator<Cached> entries = cache.values().iterator();
+        while (entries.hasNext()) {
+            Cached entry = entries.next();
+            if (now - entry.lastAccessNanos < ttlNanos) {
+                return;
+            }
+            entries.remove();
+        }
+    }
+
+    private Optional<Cached> deserialize(ChatSession row) {
+        try {
+            return Optional.of(new Cached(objectMapper.readValue(row.getState(), ChatSessionState.class), row.getState()));
+        } catch (JsonProcessingException e) {
+            log.warn("Discarding unreadable testing session of chat {}: {}", row.getChatId(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void persistIfChanged(String chatId, Cached cached) {
+        try {
+            String json = objectMapper.writeValueAsString(cached.state);
+            if (!json.equals(cached.persistedJson)) {
+                repository.save(new ChatSession(chatId, json));
+                cached.persistedJson = json;
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            // The in-memory state stays authoritative; the next change retries the write.
+            log.error("❌ Failed to persist testing session of chat {}: {}", chatId, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds turns that fell out of a chat's token window into its rolling summary. Runs on a single background
+ * thread, so the user-facing request never waits for the extra model call and summaries of one memory stay ordered.
+ */
+@Service
+public class ConversationSummarizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationSummarizer.class);
+
+    private final ChatLanguageModel chatModel;
+    private final PersistentChatMemoryStore store;
+    private final int maxSummaryWords;
+    private final ThreadPoolExecutor executor;
+    private final Counter summarized;
+    private final Counter failed;
+    private final Counter dropped;
+
+    public ConversationSummarizer(ChatLanguageModel chatModel,
+                                  PersistentChatMemoryStore store,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${chat.memory.summary-max-words:150}") int maxSummaryWords) {
+        this.chatModel = chatModel;
+        this.store = store;
+        this.maxSummaryWords = maxSummaryWords;
+        // Each summary is an extra model call; compare against chat.response counts before enabling it widely.
+        this.summarized = summaries(meterRegistry, "completed");
+        this.failed = summaries(meterRegistry, "failed");
+        this.dropped = summaries(meterRegistry, "dropped");
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "memory-summarizer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static Counter summaries(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("chat.memory.summaries")
+                .description("Background summaries of turns evicted from a chat's token window")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public void summarizeLater(String memoryId, List<ChatMessage> evicted) {
+        try {
+            // Memory ids are "<chatId>:<mode>".
+            String chatId = memoryId.substring(0, Math.max(0, memoryId.lastIndexOf(':')));
+            executor.execute(() -> ModelCallContext.run(ModelCallPriority.BACKGROUND, chatId,
+                    () -> summarize(memoryId, evicted)));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            log.warn("Summarizer backlog full, {} turns of {} are dropped without a summary", evicted.size(), memoryId);
+        }
+    }
+
+    private void summarize(String memoryId, List<ChatMessage> evicted) {
+        long started = System.currentTimeMillis();
+        try {
+            String previous = store.getSummary(memoryId);
+            StringBuilder prompt = new StringBuilder()
+                    .append("Update the running summary of a tutoring conversation. Keep the topics covered, ")
+                    .append("questions asked, and what the student got right or wrong. Use at most ")
+                    .append(maxSummaryWords).append(" words. Return ONLY the summary.\n\n")
+                    .append("CURRENT SUMMARY:\n").append(previous == null ? "(none)" : previous)
+                    .append("\n\nNEW TURNS:\n");
+            for (ChatMessage message : evicted) {
+                if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                    prompt.append("Student: ").append(userMessage.singleText()).append('\n');
+                } else if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+                    prompt.append("Tutor: ").append(aiMessage.text()).append('\n');
+                }
+            }
+
+            String summary = chatModel.generate(prompt.toString()).trim();
+            store.updateSummary(memoryId, summary);
+            summarized.increment();
+            log.info("📝 Summarized {} evicted turns of {} in {} ms", evicted.size(), memoryId,
+                    System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Failed to summarize turns of {}: {}", memoryId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
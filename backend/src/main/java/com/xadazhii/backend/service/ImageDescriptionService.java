@@ -1,18 +1,36 @@
 package com.xadazhii.backend.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -27,88 +45,186 @@ public class ImageDescriptionService {
     @Value("${ffmpeg.path:/usr/local/bin/ffmpeg}")
     private String ffmpegPath;
 
-    @Value("${file.upload-dir:/Users/m/ai_uploads}")
-    private String uploadDir;
+    private static final int FRAME_INTERVAL_SECONDS = 2;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // Far above any chunk ffmpeg writes for a video frame; a larger length means the stream is corrupt.
+    static final int MAX_PNG_CHUNK_BYTES = 64 * 1024 * 1024;
+    private static final ParameterizedTypeReference<Map<String, Object>> OLLAMA_RESPONSE_TYPE =
+            new ParameterizedTypeReference<>() {};
 
     private final RestTemplate restTemplate = new RestTemplate();
+    private final int frameConcurrency;
+    private final ExecutorService frameExecutor;
+    private final ModelCallScheduler ollamaScheduler;
+    private final Timer visionTimer;
+    private final Timer videoTimer;
+    private final DistributionSummary videoFrames;
+
+    public ImageDescriptionService(@Value("${ollama.vision.max-concurrency:3}") int frameConcurrency,
+                                   @Qualifier("ollamaScheduler") ModelCallScheduler ollamaScheduler,
+                                   MeterRegistry meterRegistry) {
+        this.frameConcurrency = Math.max(1, frameConcurrency);
+        this.ollamaScheduler = ollamaScheduler;
+        this.visionTimer = Timer.builder("media.vision.image")
+                .description("One LLaVA description, excluding the wait for an Ollama slot")
+                .register(meterRegistry);
+        this.videoTimer = Timer.builder("media.video.analysis")
+                .description("Frame extraction and description of a whole silent video")
+                .register(meterRegistry);
+        this.videoFrames = DistributionSummary.builder("media.video.frames")
+                .description("Frames described per silent video")
+                .register(meterRegistry);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.frameExecutor = Executors.newFixedThreadPool(this.frameConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "vision-frame-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     public String describe(byte[] imageBytes) throws Exception {
         log.info("🖼️ Describing an image (size: {} bytes)", imageBytes.length);
         return describeImageBytes(imageBytes);
     }
 
-    public String describeVideo(byte[] videoBytes, String originalFilename) throws Exception {
+    public String describeVideo(Path videoFile, String originalFilename) throws Exception {
         log.info("📸 Analyzing silent video: {}", originalFilename);
-        Path tempDir = Path.of(uploadDir);
-        String tempFileId = UUID.randomUUID().toString();
 
-        Path inputFile = tempDir.resolve(tempFileId + "_" + originalFilename);
-        Path framesDir = tempDir.resolve("frames_" + tempFileId);
-        Files.createDirectories(framesDir);
+        // Containers such as MP4 may keep their index at the end, so ffmpeg reads the spooled file rather than a pipe.
+        String[] ffmpegCommand = {
+                ffmpegPath,
+                "-loglevel", "error",
+                "-i", videoFile.toAbsolutePath().toString(),
+                "-vf", "fps=1/" + FRAME_INTERVAL_SECONDS,
+                "-f", "image2pipe",
+                "-vcodec", "png",
+                "-"
+        };
+
+        log.info("Streaming frames from video {}...", originalFilename);
+        List<String> frameDescriptions = videoTimer.recordCallable(() -> describeFramesFromPipe(ffmpegCommand));
+        videoFrames.record(frameDescriptions.size());
+
+        StringBuilder fullDescription = new StringBuilder();
+        fullDescription.append("This is a visual analysis of frames from video '").append(originalFilename).append("':\n\n");
+
+        if (frameDescriptions.isEmpty()) {
+            log.warn("FFMPEG extracted 0 frames. The video may be too short or corrupted.");
+            fullDescription.append("(Failed to extract frames from the video.)");
+        }
 
-        try {
-            Files.write(inputFile, videoBytes);
+        for (int i = 0; i < frameDescriptions.size(); i++) {
+            // fps=1/N emits the first frame at 0 s and then one frame every N seconds.
+            int second = i * FRAME_INTERVAL_SECONDS;
+            fullDescription.append("[Second ~").append(second).append("]: ").append(frameDescriptions.get(i)).append("\n");
+        }
 
-            String[] ffmpegCommand = {
-                    ffmpegPath,
-                    "-i", inputFile.toAbsolutePath().toString(),
-                    "-vf", "fps=1/2",
-                    framesDir.toAbsolutePath().toString() + "/frame_%04d.png"
-            };
+        log.info("Visual analysis completed ({} frames).", frameDescriptions.size());
+        return fullDescription.toString();
+    }
 
-            log.info("Extracting frames from video {}...", originalFilename);
-            if (!runProcess(ffmpegCommand, 2)) {
-                throw new Exception("FFMPEG failed to extract frames from the video. The file may be corrupted or not a video.");
+    private List<String> describeFramesFromPipe(String[] command) throws Exception {
+        Process process = new ProcessBuilder(command).start();
+        Thread stderrDrainer = drainInBackground(process.getErrorStream(), command[0]);
+
+        List<Future<String>> descriptions = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(frameConcurrency);
+        ModelCallContext callContext = ModelCallContext.current();
+
+        try (InputStream frames = new BufferedInputStream(process.getInputStream())) {
+            byte[] frame;
+            while ((frame = readPngFrame(frames)) != null) {
+                // Back-pressure: stop reading frames from ffmpeg while the vision model is saturated.
+                inFlight.acquire();
+                byte[] frameBytes = frame;
+                int frameNumber = descriptions.size() + 1;
+                descriptions.add(frameExecutor.submit(callContext.wrap(() -> {
+                    try {
+                        log.info("Describing frame {}", frameNumber);
+                        return describeImageBytes(frameBytes);
+                    } finally {
+                        inFlight.release();
+                    }
+                })));
             }
-            log.info("Frames successfully extracted to {}", framesDir);
-
-            StringBuilder fullDescription = new StringBuilder();
-            fullDescription.append("This is a visual analysis of frames from video '").append(originalFilename).append("':\n\n");
 
-            try (var frameFiles = Files.list(framesDir)) {
-                var sortedFrames = frameFiles
-                        .filter(Files::isRegularFile)
-                        .filter(p -> p.toString().endsWith(".png"))
-                        .sorted()
-                        .toList();
+            if (!process.waitFor(2, TimeUnit.MINUTES)) {
+                throw new Exception("Process " + command[0] + " hung (timeout 2 min).");
+            }
+            if (process.exitValue() != 0) {
+                throw new Exception("FFMPEG failed to extract frames from the video. The file may be corrupted or not a video.");
+            }
 
-                if (sortedFrames.isEmpty()) {
-                    log.warn("FFMPEG extracted 0 frames. The video may be too short or corrupted.");
-                    fullDescription.append("(Failed to extract frames from the video.)");
+            List<String> result = new ArrayList<>(descriptions.size());
+            for (Future<String> description : descriptions) {
+                try {
+                    result.add(description.get());
+                } catch (ExecutionException e) {
+                    throw (e.getCause() instanceof Exception cause) ? cause : e;
                 }
+            }
+            return result;
 
-                for (int i = 0; i < sortedFrames.size(); i++) {
-                    Path frameFile = sortedFrames.get(i);
-                    log.info("Describing frame: {}", frameFile.getFileName());
-
-                    byte[] frameBytes = Files.readAllBytes(frameFile);
+        } catch (Exception e) {
+            descriptions.forEach(description -> description.cancel(true));
+            throw e;
+        } finally {
+            process.destroyForcibly();
+            stderrDrainer.join(1000);
+        }
+    }
 
-                    String frameDescription = this.describeImageBytes(frameBytes);
+    // Reads one PNG (signature + chunks up to IEND) from ffmpeg's image2pipe output; null at end of stream.
+    static byte[] readPngFrame(InputStream in) throws IOException {
+        byte[] signature = in.readNBytes(PNG_SIGNATURE.length);
+        if (signature.length == 0) {
+            return null;
+        }
+        if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+            throw new IOException("Unexpected data in ffmpeg frame stream (not a PNG signature).");
+        }
 
-                    int second = (i + 1) * 5;
-                    fullDescription.append("[Second ~").append(second).append("]: ").append(frameDescription).append("\n");
-                }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(signature);
+        while (true) {
+            byte[] header = in.readNBytes(8);
+            if (header.length < 8) {
+                throw new IOException("Truncated PNG frame in ffmpeg output.");
             }
+            int length = ByteBuffer.wrap(header, 0, 4).getInt();
+            if (length < 0 || length > MAX_PNG_CHUNK_BYTES) {
+                throw new IOException("Invalid PNG chunk length " + length + " in ffmpeg output.");
+            }
+            byte[] body = in.readNBytes(length + 4);
+            if (body.length < length + 4) {
+                throw new IOException("Truncated PNG frame in ffmpeg output.");
+            }
+            frame.write(header);
+            frame.write(body);
+            if (header[4] == 'I' && header[5] == 'E' && header[6] == 'N' && header[7] == 'D') {
+                return frame.toByteArray();
+            }
+        }
+    }
 
-            log.info("Visual analysis completed.");
-            return fullDescription.toString();
-
-        } finally {
-            try {
-                if (Files.exists(framesDir)) {
-                    try (var frameFiles = Files.list(framesDir)) {
-                        frameFiles.forEach(frame -> {
-                            try { Files.delete(frame); } catch (Exception ignored) {}
-                        });
-                    }
-                    Files.delete(framesDir);
+    private static Thread drainInBackground(InputStream stream, String processName) {
+        Thread drainer = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.debug("[PROCESS-ERR - {}]: {}", processName, line);
                 }
-                Files.deleteIfExists(inputFile);
-                log.debug("Temporary files for video analysis removed.");
-            } catch (Exception e) {
-                log.error("Failed to delete temporary files: {}", e.getMessage());
+            } catch (IOException ignored) {
             }
-        }
+        }, "ffmpeg-stderr");
+        drainer.setDaemon(true);
+        drainer.start();
+        return drainer;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        frameExecutor.shutdownNow();
     }
 
     private String describeImageBytes(byte[] imageBytes) throws Exception {
@@ -127,9 +243,10 @@ public class ImageDescriptionService {
         headers.setContentType(MediaType.APPLICATION_JSON);
 
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    ollamaApiUrl, HttpMethod.POST, new HttpEntity<>(body, headers), Map.class
-            );
+            // Vision calls share the Ollama scheduler with chat, which serves them after interactive work.
+            ResponseEntity<Map<String, Object>> response = ollamaScheduler.call(() -> visionTimer.recordCallable(() -> restTemplate.exchange(
+                    ollamaApiUrl, HttpMethod.POST, new HttpEntity<>(body, headers), OLLAMA_RESPONSE_TYPE
+            )));
 
             Object result = response.getBody() != null ? response.getBody().get("response") : null;
             String text = result != null ? result.toString().trim() : "(no response)";
@@ -140,24 +257,4 @@ public class ImageDescriptionService {
             throw new Exception("Error describing frame: " + e.getMessage(), e);
         }
     }
-
-    private boolean runProcess(String[] command, int timeoutInMinutes) throws Exception {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                log.debug("[PROCESS - {}]: {}", command[0], line);
-            }
-        }
-
-        if (!process.waitFor(timeoutInMinutes, TimeUnit.MINUTES)) {
-            process.destroyForcibly();
-            throw new Exception("Process " + command[0] + " hung (timeout " + timeoutInMinutes + " min).");
-        }
-
-        return process.exitValue() == 0;
-    }
 }
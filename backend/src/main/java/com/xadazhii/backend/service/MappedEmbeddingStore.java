@@ -0,0 +1,486 @@
+package com.xadazhii.backend.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Durable embedding store kept in a single directory.
+ * Vectors live in {@code vectors.bin} (8-byte header, then little-endian float32 records) and are read through a
+ * memory-mapped buffer; ids, segment text and metadata live in {@code segments.jsonl}, one line per vector.
+ * Opening a store only maps the vector file and reads the side file, so nothing is re-embedded after a restart.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedEmbeddingStore.class);
+
+    static final String VECTORS_FILE = "vectors.bin";
+    static final String SEGMENTS_FILE = "segments.jsonl";
+
+    private static final int MAGIC = 0x454d4231; // "EMB1"
+    private static final int HEADER_BYTES = 8;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Path directory;
+    private final Path vectorsPath;
+    private final Path segmentsPath;
+
+    private FileChannel vectorChannel;
+    private FileChannel segmentChannel;
+    private FloatBuffer vectors;
+    private int dimension;
+
+    private final List<StoredSegment> segments = new ArrayList<>();
+    private float[] norms = new float[0];
+
+    @Data
+    @NoArgsConstructor
+    static class StoredSegment {
+        private String id;
+        private String text;
+        private Map<String, Object> metadata;
+
+        @JsonIgnore
+        private TextSegment segment;
+
+        StoredSegment(String id, TextSegment segment) {
+            this.id = id;
+            this.segment = segment;
+            if (segment != null) {
+                this.text = segment.text();
+                this.metadata = segment.metadata().toMap();
+            }
+        }
+
+        TextSegment toTextSegment() {
+            if (segment == null && text != null) {
+                segment = TextSegment.from(text, metadata != null ? new Metadata(metadata) : new Metadata());
+            }
+            return segment;
+        }
+    }
+
+    private MappedEmbeddingStore(Path directory) {
+        this.directory = directory;
+        this.vectorsPath = directory.resolve(VECTORS_FILE);
+        this.segmentsPath = directory.resolve(SEGMENTS_FILE);
+    }
+
+    public static MappedEmbeddingStore open(Path directory) {
+        MappedEmbeddingStore store = new MappedEmbeddingStore(directory);
+        try {
+            Files.createDirectories(directory);
+            store.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open embedding store at " + directory, e);
+        }
+        return store;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEach(BiConsumer<Embedding, TextSegment> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                consumer.accept(vectorAt(i), segments.get(i).toTextSegment());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        boolean tornLine = false;
+        if (Files.exists(segmentsPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(segmentsPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    try {
+                        segments.add(objectMapper.readValue(line, StoredSegment.class));
+                    } catch (IOException e) {
+                        // A torn last line from an interrupted append; everything after it is dropped below.
+                        logger.warn("Skipping unreadable segment line in {}: {}", segmentsPath, e.getMessage());
+                        tornLine = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        vectorChannel = FileChannel.open(vectorsPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long vectorCount = 0;
+        if (vectorChannel.size() >= HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            vectorChannel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an embedding vector file: " + vectorsPath);
+            }
+            dimension = header.getInt();
+            vectorCount = (vectorChannel.size() - HEADER_BYTES) / recordBytes();
+        }
+
+        // Vectors are written before their segment line, so a crash can only leave extra vectors or a torn line.
+        int count = (int) Math.min(vectorCount, segments.size());
+        boolean segmentsTrimmed = segments.size() > count;
+        while (segments.size() > count) {
+            segments.remove(segments.size() - 1);
+        }
+        if (dimension > 0 && vectorChannel.size() != HEADER_BYTES + (long) count * recordBytes()) {
+            vectorChannel.truncate(HEADER_BYTES + (long) count * recordBytes());
+        }
+        if (segmentsTrimmed || tornLine) {
+            rewriteSegmentsFile(segments);
+        }
+
+        segmentChannel = FileChannel.open(segmentsPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        remap();
+        norms = new float[count];
+        for (int i = 0; i < count; i++) {
+            norms[i] = norm(i);
+        }
+
+        logger.info("💾 Opened embedding store {} with {} segments (dimension {})", directory, count, dimension);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return addAll(List.of(embedding)).get(0);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return addAll(List.of(embedding), List.of(segment)).get(0);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = randomIds(embeddings.size());
+        append(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (embeddings.size() != textSegments.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+        List<String> ids = randomIds(embeddings.size());
+        append(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    private void append(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == 0) {
+                dimension = embeddings.get(0).dimension();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(dimension).flip();
+                vectorChannel.truncate(0);
+                writeFully(vectorChannel, header, 0);
+            }
+
+            ByteBuffer records = ByteBuffer.allocate(embeddings.size() * recordBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            for (Embedding embedding : embeddings) {
+                if (embedding.dimension() != dimension) {
+                    throw new IllegalArgumentException("Embedding dimension " + embedding.dimension()
+                            + " does not match store dimension " + dimension);
+                }
+                for (float value : embedding.vector()) {
+                    records.putFloat(value);
+                }
+            }
+            records.flip();
+            writeFully(vectorChannel, records, vectorChannel.size());
+            vectorChannel.force(false);
+
+            List<StoredSegment> added = new ArrayList<>(embeddings.size());
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < embeddings.size(); i++) {
+                StoredSegment stored = new StoredSegment(ids.get(i), textSegments != null ? textSegments.get(i) : null);
+                added.add(stored);
+                lines.append(objectMapper.writeValueAsString(stored)).append('\n');
+            }
+            segmentChannel.write(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+            segmentChannel.force(false);
+
+            int start = segments.size();
+            segments.addAll(added);
+            remap();
+
+            float[] grown = new float[segments.size()];
+            System.arraycopy(norms, 0, grown, 0, start);
+            norms = grown;
+            for (int i = start; i < segments.size(); i++) {
+                norms[i] = norm(i);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to embedding store at " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector();
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            if (segments.isEmpty()) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            if (query.length != dimension) {
+                throw new IllegalArgumentException("Query dimension " + query.length
+                        + " does not match store dimension " + dimension);
+            }
+
+            double queryNorm = 0;
+            for (float value : query) {
+                queryNorm += value * value;
+            }
+            queryNorm = Math.sqrt(queryNorm);
+
+            PriorityQueue<double[]> top = new PriorityQueue<>(Comparator.comparingDouble(candidate -> candidate[0]));
+            for (int i = 0; i < segments.size(); i++) {
+                if (filter != null) {
+                    TextSegment segment = segments.get(i).toTextSegment();
+                    if (segment == null || !filter.test(segment.metadata())) continue;
+                }
+
+                double dot = 0;
+                int offset = i * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    dot += query[d] * vectors.get(offset + d);
+                }
+                double denominator = queryNorm * norms[i];
+                double score = RelevanceScore.fromCosineSimilarity(denominator == 0 ? 0 : dot / denominator);
+                if (score < request.minScore()) continue;
+
+                top.add(new double[]{score, i});
+                if (top.size() > request.maxResults()) {
+                    top.poll();
+                }
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                double[] candidate = top.poll();
+                int index = (int) candidate[1];
+                StoredSegment stored = segments.get(index);
+                matches.add(0, new EmbeddingMatch<>(candidate[0], stored.getId(), vectorAt(index), stored.toTextSegment()));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        Set<String> toRemove = new HashSet<>(ids);
+        retainWhere(i -> !toRemove.contains(segments.get(i).getId()));
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        retainWhere(i -> {
+            TextSegment segment = segments.get(i).toTextSegment();
+            return segment == null || !filter.test(segment.metadata());
+        });
+    }
+
+    @Override
+    public void removeAll() {
+        retainWhere(i -> false);
+    }
+
+    private void retainWhere(IntPredicate keep) {
+        lock.writeLock().lock();
+        try {
+            List<StoredSegment> kept = new ArrayList<>();
+            ByteBuffer records = ByteBuffer.allocate(HEADER_BYTES + segments.size() * recordBytes())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            records.putInt(MAGIC).putInt(dimension);
+            for (int i = 0; i < segments.size(); i++) {
+                if (!keep.test(i)) continue;
+                kept.add(segments.get(i));
+                for (float value : vectorAt(i).vector()) {
+                    records.putFloat(value);
+                }
+            }
+            if (kept.size() == segments.size()) {
+                return;
+            }
+            records.flip();
+
+            // Compaction: write both files next to the originals, then swap them in.
+            Path vectorsTmp = directory.resolve(VECTORS_FILE + ".tmp");
+            try (FileChannel out = FileChannel.open(vectorsTmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, records, 0);
+                out.force(false);
+            }
+            vectorChannel.close();
+            segmentChannel.close();
+            Files.move(vectorsTmp, vectorsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            rewriteSegmentsFile(kept);
+
+            segments.clear();
+            segments.addAll(kept);
+            vectorChannel = FileChannel.open(vectorsPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segmentChannel = FileChannel.open(segmentsPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            remap();
+            norms = new float[segments.size()];
+            for (int i = 0; i < segments.size(); i++) {
+                norms[i] = norm(i);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact embedding store at " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            vectorChannel.close();
+            segmentChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Closes the store and removes its directory; used when the chat that owns it is deleted.
+    public void delete() throws IOException {
+        close();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void rewriteSegmentsFile(List<StoredSegment> content) throws IOException {
+        Path segmentsTmp = directory.resolve(SEGMENTS_FILE + ".tmp");
+        StringBuilder lines = new StringBuilder();
+        for (StoredSegment stored : content) {
+            lines.append(objectMapper.writeValueAsString(stored)).append('\n');
+        }
+        Files.writeString(segmentsTmp, lines, StandardCharsets.UTF_8);
+        Files.move(segmentsTmp, segmentsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void remap() throws IOException {
+        long size = vectorChannel.size();
+        if (size <= HEADER_BYTES) {
+            vectors = FloatBuffer.allocate(0);
+            return;
+        }
+        MappedByteBuffer mapped = vectorChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, size - HEADER_BYTES);
+        vectors = mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    private Embedding vectorAt(int index) {
+        float[] vector = new float[dimension];
+        vectors.get(index * dimension, vector);
+        return Embedding.from(vector);
+    }
+
+    private float norm(int index) {
+        double sum = 0;
+        int offset = index * dimension;
+        for (int d = 0; d < dimension; d++) {
+            float value = vectors.get(offset + d);
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private int recordBytes() {
+        return dimension * Float.BYTES;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static List<String> randomIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,11 @@
+package com.xadazhii.backend.service;
+
+// Thrown when a ModelCallScheduler cannot admit a call: its queue is full or the wait exceeded the queue timeout.
+public class ModelBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ModelBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,61 @@
+package com.xadazhii.backend.service;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Priority and chat of the model calls made by the current thread, read by {@link ModelCallScheduler}.
+ * Calls made outside any context are scheduled as anonymous background work.
+ */
+public record ModelCallContext(ModelCallPriority priority, String chatId) {
+
+    private static final ModelCallContext BACKGROUND = new ModelCallContext(ModelCallPriority.BACKGROUND, null);
+    private static final ThreadLocal<ModelCallContext> CURRENT = new ThreadLocal<>();
+
+    public static ModelCallContext current() {
+        ModelCallContext context = CURRENT.get();
+        return context != null ? context : BACKGROUND;
+    }
+
+    public static <T> T supply(ModelCallPriority priority, String chatId, Supplier<T> action) {
+        return new ModelCallContext(priority, chatId).supply(action);
+    }
+
+    public static void run(ModelCallPriority priority, String chatId, Runnable action) {
+        new ModelCallContext(priority, chatId).supply(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T supply(Supplier<T> action) {
+        ModelCallContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // For work handed to another thread: the task runs with the context of the thread that created it.
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            ModelCallContext previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void restore(ModelCallContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
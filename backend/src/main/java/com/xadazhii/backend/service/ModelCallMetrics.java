@@ -0,0 +1,58 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+// Generation latency and token usage of model calls. Timings start once a scheduler slot is granted,
+// so time spent queued is only in model.calls.wait.
+final class ModelCallMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    ModelCallMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    void recordGeneration(ModelCallPriority priority, boolean streaming, long startedNanos, Response<?> response) {
+        Timer.builder("model.generation")
+                .description("Time the model took to produce a complete answer")
+                .tag("priority", tagOf(priority))
+                .tag("streaming", String.valueOf(streaming))
+                .tag("outcome", response == null ? "error" : "success")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+
+        TokenUsage usage = response == null ? null : response.tokenUsage();
+        if (usage != null) {
+            countTokens(priority, "input", usage.inputTokenCount());
+            countTokens(priority, "output", usage.outputTokenCount());
+        }
+    }
+
+    void recordFirstToken(ModelCallPriority priority, long startedNanos) {
+        Timer.builder("model.generation.first.token")
+                .description("Time until a streamed answer produced its first token")
+                .tag("priority", tagOf(priority))
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void countTokens(ModelCallPriority priority, String type, Integer count) {
+        if (count == null) {
+            return;
+        }
+        Counter.builder("model.tokens")
+                .tag("priority", tagOf(priority))
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    private static String tagOf(ModelCallPriority priority) {
+        return priority.name().toLowerCase();
+    }
+}
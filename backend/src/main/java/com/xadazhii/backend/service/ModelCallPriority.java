@@ -0,0 +1,14 @@
+package com.xadazhii.backend.service;
+
+// Scheduling classes of model calls, most urgent first.
+public enum ModelCallPriority {
+    INTERACTIVE,
+    TESTING,
+    TITLE,
+    BACKGROUND;
+
+    // Background work such as ingestion and pre-generation can wait far longer than a student would.
+    boolean isBackground() {
+        return this == BACKGROUND;
+    }
+}
@@ -0,0 +1,244 @@
+package com.xadazhii.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits calls to one model backend. At most {@code maxInFlight} calls run at once, and the last
+ * {@code reservedForInteractive} slots only go to interactive chat. That way a free slot is ready for a student
+ * even while background work saturates the model, since a running generation cannot be preempted.
+ *
+ * <p>Callers beyond the limit wait in a bounded queue. A freed slot goes to the waiter with the most urgent
+ * {@link ModelCallPriority}. Within a class it goes to the chat with the fewest calls already running, then to
+ * the oldest waiter, so one heavy chat cannot monopolize the model. A full queue, or a wait past the timeout of
+ * the caller's class, is turned away with {@link ModelBusyException}.
+ */
+public class ModelCallScheduler {
+
+    private final String name;
+    private final int maxInFlight;
+    private final int reservedForInteractive;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final long backgroundQueueTimeoutNanos;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitGranted = lock.newCondition();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<String, Integer> inFlightByChat = new HashMap<>();
+    private int inFlight;
+    private long arrivals;
+
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    private final Comparator<Waiter> servingOrder = Comparator
+            .comparing((Waiter waiter) -> waiter.context.priority())
+            .thenComparingInt(waiter -> runningFor(waiter.context))
+            .thenComparingLong(waiter -> waiter.arrival);
+
+    private static final class Waiter {
+        final ModelCallContext context;
+        final long arrival;
+        boolean granted;
+
+        Waiter(ModelCallContext context, long arrival) {
+            this.context = context;
+            this.arrival = arrival;
+        }
+    }
+
+    // Releases its slot once, however many times it is closed.
+    public final class Permit implements AutoCloseable {
+        private final ModelCallContext context;
+        private boolean released;
+
+        private Permit(ModelCallContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!released) {
+                    released = true;
+                    release(context);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public ModelCallScheduler(String name,
+                              int maxInFlight,
+                              int reservedForInteractive,
+                              int maxQueued,
+                              Duration queueTimeout,
+                              Duration backgroundQueueTimeout,
+                              MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.reservedForInteractive = Math.max(0, Math.min(reservedForInteractive, this.maxInFlight - 1));
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.backgroundQueueTimeoutNanos = backgroundQueueTimeout.toNanos();
+        this.meterRegistry = meterRegistry;
+
+        this.rejectedQueueFull = Counter.builder("model.calls.rejected")
+                .tag("model", name)
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("model.calls.rejected")
+                .tag("model", name)
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+        Gauge.builder("model.calls.in.flight", this, ModelCallScheduler::inFlight)
+                .tag("model", name)
+                .register(meterRegistry);
+        Gauge.builder("model.calls.queued", this, ModelCallScheduler::queued)
+                .tag("model", name)
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Callable<T> call) throws Exception {
+        Permit permit = acquire();
+        try {
+            return call.call();
+        } finally {
+            permit.close();
+        }
+    }
+
+    public Permit acquire() throws InterruptedException {
+        ModelCallContext context = ModelCallContext.current();
+        long started = System.nanoTime();
+        lock.lock();
+        try {
+            if (hasSlotFor(context.priority()) && noWaiterAtOrAbove(context.priority())) {
+                admit(context);
+                recordWait(context, started);
+                return new Permit(context);
+            }
+            if (waiters.size() >= maxQueued) {
+                rejectedQueueFull.increment();
+                throw new ModelBusyException("The " + name + " model is busy, please try again in a moment.");
+            }
+
+            Waiter waiter = new Waiter(context, arrivals++);
+            waiters.add(waiter);
+            long remaining = context.priority().isBackground() ? backgroundQueueTimeoutNanos : queueTimeoutNanos;
+            try {
+                while (!waiter.granted && remaining > 0) {
+                    remaining = permitGranted.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (!waiter.granted) {
+                    waiters.remove(waiter);
+                    throw e;
+                }
+                Thread.currentThread().interrupt();
+            }
+            recordWait(context, started);
+
+            if (!waiter.granted) {
+                waiters.remove(waiter);
+                rejectedTimeout.increment();
+                throw new ModelBusyException("Timed out waiting for the " + name + " model, please try again in a moment.");
+            }
+            return new Permit(context);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The methods below are called with the lock held.
+
+    private boolean hasSlotFor(ModelCallPriority priority) {
+        int usable = priority == ModelCallPriority.INTERACTIVE ? maxInFlight : maxInFlight - reservedForInteractive;
+        return inFlight < usable;
+    }
+
+    // A newcomer only bypasses the queue when nobody of the same or a more urgent class is waiting.
+    private boolean noWaiterAtOrAbove(ModelCallPriority priority) {
+        return waiters.stream().noneMatch(waiter -> waiter.context.priority().compareTo(priority) <= 0);
+    }
+
+    private int runningFor(ModelCallContext context) {
+        return context.chatId() == null ? 0 : inFlightByChat.getOrDefault(context.chatId(), 0);
+    }
+
+    private void admit(ModelCallContext context) {
+        inFlight++;
+        if (context.chatId() != null) {
+            inFlightByChat.merge(context.chatId(), 1, Integer::sum);
+        }
+    }
+
+    private void release(ModelCallContext context) {
+        inFlight--;
+        if (context.chatId() != null) {
+            inFlightByChat.computeIfPresent(context.chatId(), (chatId, running) -> running > 1 ? running - 1 : null);
+        }
+
+        boolean grantedAny = false;
+        while (true) {
+            Waiter next = waiters.stream()
+                    .filter(waiter -> hasSlotFor(waiter.context.priority()))
+                    .min(servingOrder)
+                    .orElse(null);
+            if (next == null) {
+                break;
+            }
+            waiters.remove(next);
+            admit(next.context);
+            next.granted = true;
+            grantedAny = true;
+        }
+        if (grantedAny) {
+            permitGranted.signalAll();
+        }
+    }
+
+    private void recordWait(ModelCallContext context, long started) {
+        Timer.builder("model.calls.wait")
+                .description("Time calls spent queued before a model slot was free")
+                .tag("model", name)
+                .tag("priority", context.priority().name().toLowerCase())
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+}
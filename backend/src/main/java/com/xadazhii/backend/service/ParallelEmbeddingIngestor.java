@@ -0,0 +1,121 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a document and embeds its segments in fixed-size batches, then writes all segments to the store with a
+ * single bulk add. The in-process embedding model already spreads each batch over its own executor (sized by
+ * ingest.workers, see AiServiceConfig), so batches are submitted one after another rather than from another pool.
+ * Segment counters next to the embedding and store timers give segments/sec.
+ */
+public class ParallelEmbeddingIngestor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelEmbeddingIngestor.class);
+
+    private final DocumentSplitter documentSplitter;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final int batchSize;
+    private final Timer embeddingTimer;
+    private final Counter embeddedSegments;
+    private final Timer storeTimer;
+    private final Counter storedSegments;
+
+    public record IngestionStats(int segments, long millis) {
+        public double segmentsPerSecond() {
+            return millis == 0 ? segments : segments * 1000.0 / millis;
+        }
+    }
+
+    public ParallelEmbeddingIngestor(DocumentSplitter documentSplitter,
+                                     EmbeddingModel embeddingModel,
+                                     EmbeddingStore<TextSegment> embeddingStore,
+                                     int batchSize,
+                                     MeterRegistry meterRegistry) {
+        this.documentSplitter = documentSplitter;
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.batchSize = Math.max(1, batchSize);
+
+        this.embeddingTimer = Timer.builder("ingest.embedding")
+                .description("Splitting and embedding one document")
+                .register(meterRegistry);
+        this.embeddedSegments = Counter.builder("ingest.embedding.segments")
+                .description("Segments embedded; divide by ingest.embedding total time for segments/sec")
+                .register(meterRegistry);
+        this.storeTimer = Timer.builder("ingest.store")
+                .description("Bulk add of one document's segments to the embedding store")
+                .register(meterRegistry);
+        this.storedSegments = Counter.builder("ingest.store.segments")
+                .description("Segments written to the embedding store")
+                .register(meterRegistry);
+    }
+
+    public record EmbeddedSegments(List<TextSegment> segments, List<Embedding> embeddings) {
+    }
+
+    public IngestionStats ingest(Document document) {
+        long started = System.nanoTime();
+        EmbeddedSegments embedded = embed(document);
+        addToStore(embedded);
+        return logStats(embedded.segments().size(), started);
+    }
+
+    // Stores segments that were embedded earlier, e.g. reused from the upload content cache.
+    public IngestionStats store(EmbeddedSegments embedded) {
+        long started = System.nanoTime();
+        addToStore(embedded);
+        return logStats(embedded.segments().size(), started);
+    }
+
+    public EmbeddedSegments embed(Document document) {
+        List<TextSegment> segments = documentSplitter.split(document);
+        if (segments.isEmpty()) {
+            return new EmbeddedSegments(List.of(), List.of());
+        }
+
+        long started = System.nanoTime();
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        int batches = 0;
+        for (int from = 0; from < segments.size(); from += batchSize) {
+            List<TextSegment> batch = segments.subList(from, Math.min(from + batchSize, segments.size()));
+            embeddings.addAll(embeddingModel.embedAll(batch).content());
+            batches++;
+        }
+        embeddingTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        embeddedSegments.increment(segments.size());
+
+        logger.debug("Embedded {} segments in {} batches", segments.size(), batches);
+        return new EmbeddedSegments(segments, embeddings);
+    }
+
+    private void addToStore(EmbeddedSegments embedded) {
+        if (embedded.segments().isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        embeddingStore.addAll(embedded.embeddings(), embedded.segments());
+        storeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        storedSegments.increment(embedded.segments().size());
+    }
+
+    private static IngestionStats logStats(int segments, long startedNanos) {
+        IngestionStats stats = new IngestionStats(segments, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+        logger.info("🧠 Stored {} segments in {} ms ({} segments/sec)",
+                stats.segments(), stats.millis(), String.format("%.1f", stats.segmentsPerSecond()));
+        return stats;
+    }
+}
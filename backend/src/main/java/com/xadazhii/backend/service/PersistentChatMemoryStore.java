@@ -0,0 +1,162 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.entity.ChatMemoryRecord;
+import com.xadazhii.backend.repository.ChatMemoryRecordRepository;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ChatMemoryStore} on the application's Postgres datasource, with a small LRU of recently used
+ * memories in front of it so the several reads langchain4j does per turn do not each hit the database.
+ * Updates are applied in memory under the memory's lock and written to the database after the lock is released,
+ * so a slow insert never holds up other chats that share the lock stripe.
+ */
+@Service
+public class PersistentChatMemoryStore implements ChatMemoryStore {
+
+    private final ChatMemoryRecordRepository repository;
+    private final int maxCachedEntries;
+    private final Map<String, ChatMemoryRecord> cache;
+    private final Object[] locks = new Object[64];
+    // Newest record of each memory that is not yet in the database; readers see it before the cache and the table.
+    private final Map<String, ChatMemoryRecord> unsaved = new ConcurrentHashMap<>();
+    private final Set<String> flushing = ConcurrentHashMap.newKeySet();
+
+    public PersistentChatMemoryStore(ChatMemoryRecordRepository repository,
+                                     @Value("${chat.memory.cache-entries:500}") int maxCachedEntries) {
+        this.repository = repository;
+        this.maxCachedEntries = Math.max(1, maxCachedEntries);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatMemoryRecord> eldest) {
+                return size() > PersistentChatMemoryStore.this.maxCachedEntries;
+            }
+        };
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Held for every read-modify-write of a memory, so the summarizer and a running turn cannot lose each other's update.
+    Object lockFor(Object memoryId) {
+        return locks[Math.floorMod(memoryId.hashCode(), locks.length)];
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String messages = record(memoryId.toString()).getMessages();
+        return messages == null ? List.of() : ChatMessageDeserializer.messagesFromJson(messages);
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        synchronized (lockFor(memoryId)) {
+            stageMessages(memoryId, messages);
+        }
+        flush(memoryId.toString());
+    }
+
+    // Caller holds lockFor(memoryId) and calls flush once it has released it.
+    void stageMessages(Object memoryId, List<ChatMessage> messages) {
+        ChatMemoryRecord record = copyOf(record(memoryId.toString()));
+        record.setMessages(ChatMessageSerializer.messagesToJson(messages));
+        stage(record);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        synchronized (lockFor(memoryId)) {
+            ChatMemoryRecord record = copyOf(record(memoryId.toString()));
+            record.setMessages(null);
+            record.setSummary(null);
+            stage(record);
+        }
+        flush(memoryId.toString());
+    }
+
+    public String getSummary(Object memoryId) {
+        return record(memoryId.toString()).getSummary();
+    }
+
+    public void updateSummary(Object memoryId, String summary) {
+        synchronized (lockFor(memoryId)) {
+            ChatMemoryRecord record = copyOf(record(memoryId.toString()));
+            record.setSummary(summary);
+            stage(record);
+        }
+        flush(memoryId.toString());
+    }
+
+    // Memory ids are "<chatId>:<mode>", so one prefix delete removes every mode of a chat.
+    @Transactional
+    public void deleteChat(String chatId) {
+        String prefix = chatId + ":";
+        unsaved.keySet().removeIf(memoryId -> memoryId.startsWith(prefix));
+        synchronized (cache) {
+            cache.keySet().removeIf(memoryId -> memoryId.startsWith(prefix));
+        }
+        repository.deleteByMemoryIdPrefix(prefix);
+    }
+
+    private ChatMemoryRecord record(String memoryId) {
+        ChatMemoryRecord pending = unsaved.get(memoryId);
+        if (pending != null) {
+            return pending;
+        }
+        synchronized (cache) {
+            ChatMemoryRecord cached = cache.get(memoryId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ChatMemoryRecord loaded = repository.findById(memoryId).orElseGet(() -> new ChatMemoryRecord(memoryId));
+        synchronized (cache) {
+            cache.putIfAbsent(memoryId, loaded);
+            return cache.get(memoryId);
+        }
+    }
+
+    private void stage(ChatMemoryRecord record) {
+        record.setUpdatedAt(Instant.now());
+        unsaved.put(record.getMemoryId(), record);
+        synchronized (cache) {
+            cache.put(record.getMemoryId(), record);
+        }
+    }
+
+    // One thread at a time writes a given memory, always its newest staged record. A thread that finds another one
+    // writing leaves its record to it: the writer re-checks for newer records after it lets go.
+    void flush(String memoryId) {
+        while (unsaved.containsKey(memoryId) && flushing.add(memoryId)) {
+            try {
+                ChatMemoryRecord newest = unsaved.get(memoryId);
+                if (newest != null) {
+                    repository.save(newest);
+                    unsaved.remove(memoryId, newest);
+                }
+            } finally {
+                flushing.remove(memoryId);
+            }
+        }
+    }
+
+    // Cached records are shared between threads and never mutated in place.
+    private static ChatMemoryRecord copyOf(ChatMemoryRecord source) {
+        ChatMemoryRecord copy = new ChatMemoryRecord(source.getMemoryId());
+        copy.setMessages(source.getMessages());
+        copy.setSummary(source.getSummary());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        return copy;
+    }
+}
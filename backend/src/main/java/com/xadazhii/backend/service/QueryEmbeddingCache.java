@@ -0,0 +1,95 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * LRU cache of query embeddings shared by all chats, so repeated and templated queries skip ONNX inference.
+ */
+@Service
+public class QueryEmbeddingCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel embeddingModel;
+    private final int maxEntries;
+    private final Map<String, Embedding> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public QueryEmbeddingCache(EmbeddingModel embeddingModel,
+                               MeterRegistry meterRegistry,
+                               @Value("${rag.query-embedding-cache.max-entries:2000}") int maxEntries) {
+        this.embeddingModel = embeddingModel;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Embedding> eldest) {
+                return size() > QueryEmbeddingCache.this.maxEntries;
+            }
+        };
+
+        FunctionCounter.builder("rag.query.embedding.cache", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("rag.query.embedding.cache", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("rag.query.embedding.cache.size", this, QueryEmbeddingCache::size)
+                .register(meterRegistry);
+    }
+
+    public Embedding embed(String text) {
+        String key = normalize(text);
+
+        synchronized (cache) {
+            Embedding cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+        Embedding embedding = embeddingModel.embed(key).content();
+
+        synchronized (cache) {
+            cache.put(key, embedding);
+        }
+        return embedding;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // all-MiniLM-L6-v2 is an uncased model and its tokenizer ignores runs of whitespace,
+    // so this normalization does not change the resulting embedding.
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,230 @@
+package com.xadazhii.backend.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-chat buffers of pre-generated testing questions, kept topped up by background workers once a chat
+ * starts a quiz, so serving the next question is a pop instead of a model call. A chat's buffer is regenerated
+ * when new material is ingested into it.
+ */
+@Service
+public class QuestionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionPool.class);
+    static final List<String> TYPES = List.of("MC", "OPEN");
+
+    private final TestingQuestionGenerator generator;
+    private final int targetSize;
+    private final int maxChats;
+    private final Map<String, Buffer> buffers;
+    private final ThreadPoolExecutor executor;
+    private final Timer refillTimer;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Replaced rather than cleared when material changes, so workers still filling an old buffer drop their results.
+    private static final class Buffer {
+        final Map<String, Deque<AiTestingResponse>> questions = new LinkedHashMap<>();
+        final Set<String> refilling = new HashSet<>();
+        List<String> history;
+
+        Buffer(List<String> history) {
+            this.history = history;
+            TYPES.forEach(type -> questions.put(type, new ArrayDeque<>()));
+        }
+
+        boolean contains(String questionText) {
+            return questions.values().stream()
+                    .flatMap(Collection::stream)
+                    .anyMatch(question -> question.getQuestion().equals(questionText));
+        }
+
+        List<String> avoidList() {
+            List<String> avoid = new ArrayList<>(history);
+            questions.values().forEach(queue -> queue.forEach(question -> avoid.add(question.getQuestion())));
+            return avoid;
+        }
+    }
+
+    public QuestionPool(TestingQuestionGenerator generator,
+                        MeterRegistry meterRegistry,
+                        @Value("${testing.question-pool.size:3}") int targetSize,
+                        @Value("${testing.question-pool.max-chats:200}") int maxChats,
+                        @Value("${testing.question-pool.workers:2}") int workers) {
+        this.generator = generator;
+        this.targetSize = Math.max(1, targetSize);
+        this.maxChats = Math.max(1, maxChats);
+        this.buffers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Buffer> eldest) {
+                return size() > QuestionPool.this.maxChats;
+            }
+        };
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        int poolSize = Math.max(1, workers);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "question-pool-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.refillTimer = Timer.builder("testing.question.pool.refill")
+                .description("Time to generate one pooled question")
+                .register(meterRegistry);
+        Gauge.builder("testing.question.pool.depth", this, QuestionPool::depth)
+                .register(meterRegistry);
+        FunctionCounter.builder("testing.question.pool", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("testing.question.pool", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    // Pops the oldest buffered question of the type that the student has not been asked yet.
+    public Optional<AiTestingResponse> take(String chatId, String type, Collection<String> history) {
+        synchronized (buffers) {
+            Buffer buffer = buffers.get(chatId);
+            if (buffer != null) {
+                Iterator<AiTestingResponse> queued = buffer.questions.get(type).iterator();
+                while (queued.hasNext()) {
+                    AiTestingResponse question = queued.next();
+                    queued.remove();
+                    if (!history.contains(question.getQuestion())) {
+                        hits.incrementAndGet();
+                        return Optional.of(question);
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void refill(String chatId, Collection<String> history) {
+        synchronized (buffers) {
+            Buffer buffer = buffers.computeIfAbsent(chatId, id -> new Buffer(List.copyOf(history)));
+            buffer.history = List.copyOf(history);
+            scheduleMissing(chatId, buffer);
+        }
+    }
+
+    // Questions buffered before the upload were generated without the new material.
+    public void onMaterialIngested(String chatId) {
+        synchronized (buffers) {
+            Buffer previous = buffers.get(chatId);
+            if (previous == null) {
+                return;
+            }
+            Buffer buffer = new Buffer(previous.history);
+            buffers.put(chatId, buffer);
+            scheduleMissing(chatId, buffer);
+        }
+    }
+
+    public void remove(String chatId) {
+        synchronized (buffers) {
+            buffers.remove(chatId);
+        }
+    }
+
+    public int depth() {
+        synchronized (buffers) {
+            return buffers.values().stream()
+                    .mapToInt(buffer -> buffer.questions.values().stream().mapToInt(Deque::size).sum())
+                    .sum();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    // Called with the buffers lock held. At most one worker fills a given type of a given buffer.
+    private void scheduleMissing(String chatId, Buffer buffer) {
+        for (String type : TYPES) {
+            if (buffer.questions.get(type).size() >= targetSize || !buffer.refilling.add(type)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> fill(chatId, buffer, type));
+            } catch (RejectedExecutionException e) {
+                buffer.refilling.remove(type);
+                log.warn("Question pool backlog full, {} questions of chat {} are generated on demand", type, chatId);
+            }
+        }
+    }
+
+    private void fill(String chatId, Buffer buffer, String type) {
+        try {
+            while (true) {
+                List<String> avoid;
+                synchronized (buffers) {
+                    if (buffers.get(chatId) != buffer || buffer.questions.get(type).size() >= targetSize) {
+                        return;
+                    }
+                    avoid = buffer.avoidList();
+                }
+
+                long started = System.nanoTime();
+                AiTestingResponse question = ModelCallContext.supply(ModelCallPriority.BACKGROUND, chatId,
+                        () -> generator.generate(chatId, type, avoid));
+                refillTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+                synchronized (buffers) {
+                    if (buffers.get(chatId) != buffer) {
+                        return;
+                    }
+                    if (!buffer.contains(question.getQuestion()) && !buffer.history.contains(question.getQuestion())) {
+                        buffer.questions.get(type).addLast(question);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // The next testing turn schedules another refill; until then questions are generated on demand.
+            log.warn("Failed to pre-generate a {} question for chat {}: {}", type, chatId, e.getMessage());
+        } finally {
+            synchronized (buffers) {
+                buffer.refilling.remove(type);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,103 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects paraphrased repeats of questions a chat has already seen. Embeddings of a chat's earlier questions
+ * are computed once and kept per chat, so checking a candidate against the whole history costs one embedding
+ * and a cosine similarity per earlier question.
+ */
+@Service
+public class QuestionSimilarityIndex {
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final double minSimilarity;
+    private final int maxChats;
+    private final int maxQuestionsPerChat;
+    private final Map<String, Map<String, Embedding>> embeddingsByChat;
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public QuestionSimilarityIndex(QueryEmbeddingCache queryEmbeddingCache,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${testing.duplicate-question.min-similarity:0.9}") double minSimilarity,
+                                   @Value("${testing.duplicate-question.max-chats:200}") int maxChats,
+                                   @Value("${testing.duplicate-question.history-size:50}") int historySize) {
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.minSimilarity = minSimilarity;
+        this.maxChats = Math.max(1, maxChats);
+        // Checks cover the chat's bounded history plus the questions waiting in its pool.
+        this.maxQuestionsPerChat = 2 * Math.max(1, historySize);
+        this.embeddingsByChat = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Embedding>> eldest) {
+                return size() > QuestionSimilarityIndex.this.maxChats;
+            }
+        };
+
+        FunctionCounter.builder("testing.question.duplicates", duplicates, AtomicLong::get)
+                .description("Generated questions rejected as near-duplicates of earlier ones")
+                .register(meterRegistry);
+    }
+
+    // Returns the earlier question the candidate repeats, if any.
+    public Optional<String> findNearDuplicate(String chatId, String candidate, Collection<String> earlier) {
+        if (earlier.isEmpty()) {
+            return Optional.empty();
+        }
+        Embedding embedding = queryEmbeddingCache.embed(candidate);
+
+        for (String question : earlier) {
+            if (question.equals(candidate)
+                    || CosineSimilarity.between(embedding, embeddingOf(chatId, question)) >= minSimilarity) {
+                duplicates.incrementAndGet();
+                return Optional.of(question);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void remove(String chatId) {
+        synchronized (embeddingsByChat) {
+            embeddingsByChat.remove(chatId);
+        }
+    }
+
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    private Embedding embeddingOf(String chatId, String question) {
+        synchronized (embeddingsByChat) {
+            Embedding cached = questionsOf(chatId).get(question);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Embedding embedding = queryEmbeddingCache.embed(question);
+        synchronized (embeddingsByChat) {
+            questionsOf(chatId).put(question, embedding);
+        }
+        return embedding;
+    }
+
+    // Least recently checked questions go first once a chat's questions exceed the bound.
+    private Map<String, Embedding> questionsOf(String chatId) {
+        return embeddingsByChat.computeIfAbsent(chatId, id -> new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Embedding> eldest) {
+                return size() > maxQuestionsPerChat;
+            }
+        });
+    }
+}
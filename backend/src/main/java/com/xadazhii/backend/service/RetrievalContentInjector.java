@@ -0,0 +1,21 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import java.util.List;
+
+// langchain4j's default prompt layout, with the result marked as an AugmentedUserMessage.
+public class RetrievalContentInjector extends DefaultContentInjector {
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        ChatMessage injected = super.inject(contents, chatMessage);
+        if (injected != chatMessage && chatMessage instanceof UserMessage original
+                && injected instanceof UserMessage augmented) {
+            return new AugmentedUserMessage(augmented, original);
+        }
+        return injected;
+    }
+}
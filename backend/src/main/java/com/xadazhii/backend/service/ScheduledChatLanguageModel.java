@@ -0,0 +1,60 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Runs every call of the wrapped model in a slot of the scheduler, at the priority of the calling thread.
+public class ScheduledChatLanguageModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final ModelCallScheduler scheduler;
+    private final ModelCallMetrics metrics;
+
+    public ScheduledChatLanguageModel(ChatLanguageModel delegate, ModelCallScheduler scheduler, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.metrics = new ModelCallMetrics(meterRegistry);
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return scheduled(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return scheduled(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return scheduled(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> scheduled(Supplier<Response<AiMessage>> generation) {
+        ModelCallPriority priority = ModelCallContext.current().priority();
+        ModelCallScheduler.Permit permit;
+        try {
+            permit = scheduler.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the model", e);
+        }
+
+        long started = System.nanoTime();
+        Response<AiMessage> response = null;
+        try {
+            response = generation.get();
+            return response;
+        } finally {
+            permit.close();
+            metrics.recordGeneration(priority, false, started, response);
+        }
+    }
+}
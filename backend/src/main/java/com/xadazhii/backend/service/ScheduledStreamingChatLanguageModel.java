@@ -0,0 +1,74 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+
+// Holds a scheduler slot from the start of a streamed generation until its completion or error.
+public class ScheduledStreamingChatLanguageModel implements StreamingChatLanguageModel {
+
+    private final StreamingChatLanguageModel delegate;
+    private final ModelCallScheduler scheduler;
+    private final ModelCallMetrics metrics;
+
+    public ScheduledStreamingChatLanguageModel(StreamingChatLanguageModel delegate,
+                                               ModelCallScheduler scheduler,
+                                               MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.metrics = new ModelCallMetrics(meterRegistry);
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        ModelCallPriority priority = ModelCallContext.current().priority();
+        ModelCallScheduler.Permit permit;
+        try {
+            permit = scheduler.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handler.onError(e);
+            return;
+        } catch (ModelBusyException e) {
+            handler.onError(e);
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            delegate.generate(messages, new StreamingResponseHandler<>() {
+                private boolean firstToken = true;
+
+                @Override
+                public void onNext(String token) {
+                    if (firstToken) {
+                        firstToken = false;
+                        metrics.recordFirstToken(priority, started);
+                    }
+                    handler.onNext(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    permit.close();
+                    metrics.recordGeneration(priority, true, started, response);
+                    handler.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    permit.close();
+                    metrics.recordGeneration(priority, true, started, null);
+                    handler.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-chat cache of explanation-mode answers, matched by embedding similarity of the question, so a rephrased
+ * repeat skips retrieval and generation. A chat's entries are dropped whenever new material is ingested into it.
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final double minSimilarity;
+    private final int maxAnswersPerChat;
+    private final int maxChats;
+    private final int minQuestionWords;
+    private final Map<String, Deque<CachedAnswer>> answersByChat;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record CachedAnswer(Embedding question, String answer) {
+    }
+
+    public SemanticAnswerCache(QueryEmbeddingCache queryEmbeddingCache,
+                               MeterRegistry meterRegistry,
+                               @Value("${rag.answer-cache.min-similarity:0.95}") double minSimilarity,
+                               @Value("${rag.answer-cache.max-answers-per-chat:50}") int maxAnswersPerChat,
+                               @Value("${rag.answer-cache.max-chats:500}") int maxChats,
+                               @Value("${rag.answer-cache.min-question-words:3}") int minQuestionWords) {
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.minSimilarity = minSimilarity;
+        this.maxAnswersPerChat = Math.max(1, maxAnswersPerChat);
+        this.maxChats = Math.max(1, maxChats);
+        this.minQuestionWords = minQuestionWords;
+        this.answersByChat = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Deque<CachedAnswer>> eldest) {
+                return size() > SemanticAnswerCache.this.maxChats;
+            }
+        };
+
+        FunctionCounter.builder("rag.answer.cache", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("rag.answer.cache", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public Optional<String> find(String chatId, String question) {
+        if (!cacheable(question)) {
+            return Optional.empty();
+        }
+        Embedding embedding = queryEmbeddingCache.embed(question);
+
+        String best = null;
+        double bestSimilarity = minSimilarity;
+        synchronized (answersByChat) {
+            Deque<CachedAnswer> answers = answersByChat.get(chatId);
+            if (answers != null) {
+                for (CachedAnswer cached : answers) {
+                    double similarity = CosineSimilarity.between(embedding, cached.question());
+                    if (similarity >= bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = cached.answer();
+                    }
+                }
+            }
+        }
+
+        (best != null ? hits : misses).incrementAndGet();
+        return Optional.ofNullable(best);
+    }
+
+    public void put(String chatId, String question, String answer) {
+        if (!cacheable(question) || answer == null || answer.isBlank()) {
+            return;
+        }
+        CachedAnswer cached = new CachedAnswer(queryEmbeddingCache.embed(question), answer);
+
+        synchronized (answersByChat) {
+            Deque<CachedAnswer> answers = answersByChat.computeIfAbsent(chatId, id -> new ArrayDeque<>());
+            answers.addFirst(cached);
+            while (answers.size() > maxAnswersPerChat) {
+                answers.removeLast();
+            }
+        }
+    }
+
+    public void invalidate(String chatId) {
+        synchronized (answersByChat) {
+            answersByChat.remove(chatId);
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    // Very short follow-ups ("why?", "explain more") depend on the conversation, not on the wording alone.
+    private boolean cacheable(String question) {
+        return question != null && question.trim().split("\\s+").length >= minQuestionWords;
+    }
+}
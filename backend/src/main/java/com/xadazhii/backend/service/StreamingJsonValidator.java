@@ -0,0 +1,102 @@
+package com.xadazhii.backend.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Checks a streamed JSON answer token by token, so a response that cannot pass validation is rejected while the
+ * model is still generating it instead of after the whole answer arrived. {@link #feed} throws
+ * {@link IllegalArgumentException} on the first problem: text before the object, a syntax error, a property the
+ * target class does not have, or a top-level value refused by the field check.
+ */
+class StreamingJsonValidator {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final Set<String> knownProperties;
+    private final BiConsumer<String, String> fieldCheck;
+    private final StringBuilder text = new StringBuilder();
+
+    private int depth;
+    private boolean started;
+    private String currentField;
+
+    StreamingJsonValidator(Set<String> knownProperties, BiConsumer<String, String> fieldCheck) {
+        this.knownProperties = knownProperties;
+        this.fieldCheck = fieldCheck;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    static Set<String> propertiesOf(Class<?> type) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.getDeserializationConfig()
+                .introspect(objectMapper.constructType(type))
+                .findProperties().stream()
+                .map(BeanPropertyDefinition::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    void feed(String token) {
+        text.append(token);
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken next;
+            while ((next = parser.nextToken()) != null && next != JsonToken.NOT_AVAILABLE) {
+                accept(next);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    String text() {
+        return text.toString();
+    }
+
+    private void accept(JsonToken token) throws IOException {
+        if (!started) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Response must be a JSON object.");
+            }
+            started = true;
+        }
+
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> depth++;
+            case END_OBJECT, END_ARRAY -> depth--;
+            case FIELD_NAME -> {
+                if (depth == 1) {
+                    currentField = parser.currentName();
+                    if (!knownProperties.contains(currentField)) {
+                        throw new IllegalArgumentException("Unknown property \"" + currentField + "\".");
+                    }
+                }
+            }
+            default -> {
+                if (depth == 1 && token.isScalarValue()) {
+                    fieldCheck.accept(currentField, token == JsonToken.VALUE_NULL ? null : parser.getText());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.Tokenizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token-budgeted chat memory. The system message is always kept. The oldest turns are dropped once the window
+ * exceeds its budget, and when a summarizer is configured they are folded into a rolling summary
+ * that is appended to the system message. The budget covers the summary too, so the prompt size has a fixed ceiling.
+ * A RAG-augmented user message is stored without the retrieved material: the window holds the conversation, and
+ * the retrieved text reaches the model only on the turn it was retrieved for.
+ */
+public class SummarizingTokenWindowChatMemory implements ChatMemory {
+
+    static final String SUMMARY_HEADER = "\n\nSUMMARY OF THE EARLIER CONVERSATION:\n";
+
+    private final String id;
+    private final int maxTokens;
+    private final Tokenizer tokenizer;
+    private final PersistentChatMemoryStore store;
+    private final ConversationSummarizer summarizer;
+    // The current turn's augmented message, handed to the model in place of its stored original until the answer.
+    private volatile AugmentedUserMessage currentTurn;
+
+    public SummarizingTokenWindowChatMemory(String id,
+                                            int maxTokens,
+                                            Tokenizer tokenizer,
+                                            PersistentChatMemoryStore store,
+                                            ConversationSummarizer summarizer) {
+        this.id = id;
+        this.maxTokens = maxTokens;
+        this.tokenizer = tokenizer;
+        this.store = store;
+        this.summarizer = summarizer;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        List<ChatMessage> evicted;
+        synchronized (store.lockFor(id)) {
+            List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+            if (message instanceof SystemMessage) {
+                int existing = indexOfSystemMessage(messages);
+                if (existing >= 0) {
+                    if (messages.get(existing).equals(message)) {
+                        return;
+                    }
+                    messages.remove(existing);
+                }
+                messages.add(0, message);
+            } else if (message instanceof AugmentedUserMessage augmented) {
+                currentTurn = augmented;
+                messages.add(augmented.original());
+            } else {
+                currentTurn = null;
+                messages.add(message);
+            }
+
+            evicted = ensureCapacity(messages);
+            store.stageMessages(id, messages);
+        }
+        store.flush(id);
+        if (!evicted.isEmpty() && summarizer != null) {
+            summarizer.summarizeLater(id, evicted);
+        }
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+        String summary = store.getSummary(id);
+        int systemIndex = indexOfSystemMessage(messages);
+        if (summary != null && !summary.isBlank() && systemIndex >= 0) {
+            SystemMessage system = (SystemMessage) messages.get(systemIndex);
+            messages.set(systemIndex, SystemMessage.from(system.text() + SUMMARY_HEADER + summary));
+        }
+        AugmentedUserMessage augmented = currentTurn;
+        if (augmented != null) {
+            int turnIndex = messages.lastIndexOf(augmented.original());
+            if (turnIndex >= 0) {
+                messages.set(turnIndex, augmented);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public void clear() {
+        store.deleteMessages(id);
+    }
+
+    // Removes the oldest non-system messages until the window plus the current summary fits the budget.
+    private List<ChatMessage> ensureCapacity(List<ChatMessage> messages) {
+        String summary = store.getSummary(id);
+        int summaryTokens = summary == null ? 0 : tokenizer.estimateTokenCountInText(SUMMARY_HEADER + summary);
+
+        List<ChatMessage> evicted = new ArrayList<>();
+        while (tokenizer.estimateTokenCountInMessages(messages) + summaryTokens > maxTokens) {
+            int oldest = messages.get(0) instanceof SystemMessage ? 1 : 0;
+            // The newest message always stays, even if it alone exceeds the budget.
+            if (oldest >= messages.size() - 1) {
+                break;
+            }
+            evicted.add(messages.remove(oldest));
+        }
+        return evicted;
+    }
+
+    private static int indexOfSystemMessage(List<ChatMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i) instanceof SystemMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
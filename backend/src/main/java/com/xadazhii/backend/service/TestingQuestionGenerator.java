@@ -0,0 +1,211 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Generates one validated testing question for a chat. Calls the model directly with the testing system message
+ * and the retrieved chat context, without a chat memory, so it can run off the request path. The answer is streamed
+ * in JSON mode and checked as it arrives, so a wrong type or a repeated question stops the generation early.
+ */
+@Service
+public class TestingQuestionGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(TestingQuestionGenerator.class);
+    static final int MAX_ATTEMPTS = 5;
+    private static final Set<String> RESPONSE_PROPERTIES = StreamingJsonValidator.propertiesOf(AiTestingResponse.class);
+
+    private final StreamingChatLanguageModel streamingModel;
+    private final ChatAwareContentRetriever retriever;
+    private final QuestionSimilarityIndex similarityIndex;
+    private final MeterRegistry meterRegistry;
+    private final long timeoutSeconds;
+
+    public TestingQuestionGenerator(@Qualifier("testingStreamingChatModel") StreamingChatLanguageModel streamingModel,
+                                    EmbeddingStore<TextSegment> embeddingStore,
+                                    QueryEmbeddingCache queryEmbeddingCache,
+                                    QuestionSimilarityIndex similarityIndex,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${testing.generation.timeout-seconds:180}") long timeoutSeconds) {
+        this.streamingModel = streamingModel;
+        this.similarityIndex = similarityIndex;
+        this.meterRegistry = meterRegistry;
+        this.timeoutSeconds = timeoutSeconds;
+        this.retriever = new ChatAwareContentRetriever(embeddingStore, queryEmbeddingCache, 10, 0.0,
+                meterRegistry, "testing");
+    }
+
+    // Throws once every attempt produced an invalid or duplicate question. The history is checked by similarity
+    // instead of being sent to the model, so the prompt does not grow with the quiz.
+    AiTestingResponse generate(String chatId, String type, Collection<String> history) {
+        String basePrompt = TestingPrompts.generateQuestion(type);
+        String context = retrieveContext(chatId, basePrompt);
+
+        String prompt = basePrompt;
+        String lastError = "";
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            StreamingJsonValidator validator = new StreamingJsonValidator(RESPONSE_PROPERTIES, (field, value) -> {
+                if ("type".equals(field)) {
+                    checkType(type, value);
+                } else if ("question".equals(field)) {
+                    checkQuestion(chatId, value, history);
+                }
+            });
+            String raw;
+            try {
+                raw = stream(List.of(
+                        SystemMessage.from(TestingPrompts.SYSTEM_MESSAGE),
+                        UserMessage.from(prompt + context)
+                ), validator);
+            } catch (IllegalArgumentException e) {
+                recordAttempt("rejected_early");
+                log.warn("Question generation attempt {} for chat {} stopped early: {}", attempt, chatId, e.getMessage());
+                lastError = e.getMessage();
+                prompt = retryPrompt(basePrompt, e.getMessage());
+                continue;
+            } catch (Exception e) {
+                recordAttempt("failed");
+                throw new IllegalStateException("Question generation failed: " + e.getMessage(), e);
+            }
+
+            try {
+                AiTestingResponse question = validate(chatId, AiTestingResponse.fromModelOutput(raw), type, history);
+                recordAttempt("accepted");
+                return question;
+            } catch (Exception e) {
+                recordAttempt("rejected");
+                log.warn("Question generation attempt {} for chat {} failed: {}", attempt, chatId, e.getMessage());
+                lastError = e.getMessage();
+                prompt = retryPrompt(basePrompt, e.getMessage());
+            }
+        }
+        throw new IllegalStateException(lastError);
+    }
+
+    // Throwing from onNext makes the Ollama client close the response stream, which ends the generation.
+    private String stream(List<ChatMessage> messages, StreamingJsonValidator validator) throws Exception {
+        CompletableFuture<String> done = new CompletableFuture<>();
+        streamingModel.generate(messages, new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                validator.feed(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                done.complete(validator.text());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.completeExceptionally(error);
+            }
+        });
+
+        try {
+            return done.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            throw new TimeoutException("No complete answer within " + timeoutSeconds + " s");
+        }
+    }
+
+    private static String retryPrompt(String basePrompt, String error) {
+        return basePrompt + String.format(
+                " (PREVIOUS ATTEMPT FAILED: %s. Generate a different, unique question in strict JSON format.)",
+                error
+        );
+    }
+
+    // accepted / rejected / rejected_early per attempt gives the retry rate; failed counts transport errors.
+    private void recordAttempt(String result) {
+        Counter.builder("testing.model.attempts")
+                .tag("stage", "generation")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private String retrieveContext(String chatId, String prompt) {
+        Query query = Query.from(prompt, Metadata.from(UserMessage.from(prompt), chatId, List.of()));
+        List<Content> contents = retriever.retrieve(query);
+        if (contents.isEmpty()) {
+            return "";
+        }
+        return "\n\nAnswer using the following information:\n" + contents.stream()
+                .map(content -> content.textSegment().text())
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private AiTestingResponse validate(String chatId, AiTestingResponse response, String type, Collection<String> history) {
+        checkType(type, response.getType());
+        response.setType(type);
+        checkQuestion(chatId, response.getQuestion(), history);
+
+        if ("MC".equals(type)) {
+            if (response.getOptions() == null ||
+                    response.getCorrectOptionIndex() == null ||
+                    response.getCorrectOptionIndex() < 0 ||
+                    response.getCorrectOptionIndex() >= response.getOptions().size()) {
+                throw new IllegalArgumentException("MC question must have a valid correctOptionIndex.");
+            }
+            // Incomplete explanations are not worth a retry; such a question is graded by the model instead.
+            List<String> explanations = response.getOptionExplanations();
+            if (explanations != null && (explanations.size() != response.getOptions().size()
+                    || explanations.stream().anyMatch(explanation -> explanation == null || explanation.isBlank()))) {
+                response.setOptionExplanations(null);
+            }
+        } else {
+            response.setOptions(null);
+            response.setCorrectOptionIndex(null);
+            response.setOptionExplanations(null);
+        }
+        return response;
+    }
+
+    private static void checkType(String expected, String actual) {
+        if (actual == null || !expected.equals(actual.toUpperCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Expected a question of TYPE: " + expected + ".");
+        }
+    }
+
+    private void checkQuestion(String chatId, String questionText, Collection<String> history) {
+        if (questionText == null || questionText.isEmpty()) {
+            throw new IllegalArgumentException("Question text is missing.");
+        }
+        similarityIndex.findNearDuplicate(chatId, questionText, history).ifPresent(earlier -> {
+            throw new IllegalArgumentException("Question is too similar to the earlier question \"" + earlier
+                    + "\". AI must generate a unique question.");
+        });
+    }
+}
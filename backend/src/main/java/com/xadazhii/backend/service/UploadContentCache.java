@@ -0,0 +1,277 @@
+package com.xadazhii.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of extracted text and segment embeddings, keyed by the SHA-256 of the uploaded bytes,
+ * so the same lecture file uploaded into another chat skips extraction and embedding. The directory is kept under
+ * a byte budget: every new entry sweeps out the least recently used ones once the budget is exceeded.
+ */
+@Service
+public class UploadContentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadContentCache.class);
+
+    static final String META_FILE = "meta.json";
+    static final String TEXT_FILE = "text.txt";
+
+    // Per-upload metadata is not part of the cached content; it is set again for every chat the file is attached to.
+    private static final List<String> PER_UPLOAD_KEYS = List.of(ChatPartitionedEmbeddingStore.CHAT_ID_KEY, "file_name");
+
+    private final Path root;
+    private final long maxBytes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public record Entry(String sourceType, long processingMillis, ParallelEmbeddingIngestor.EmbeddedSegments embedded) {
+    }
+
+    record Meta(String sourceType, long processingMillis, int segments) {
+    }
+
+    public UploadContentCache(MeterRegistry meterRegistry,
+                              @Value("${upload.content-cache.dir:content-cache}") String rootDir,
+                              @Value("${upload.content-cache.max-bytes:2147483648}") long maxBytes) {
+        this.root = Paths.get(rootDir);
+        this.maxBytes = Math.max(0, maxBytes);
+
+        FunctionCounter.builder("upload.content.cache", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("upload.content.cache", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("upload.content.cache.saved", savedMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .description("Extraction and embedding time skipped thanks to cache hits")
+                .register(meterRegistry);
+        FunctionCounter.builder("upload.content.cache.evictions", evictions, AtomicLong::get)
+                .description("Entries removed to keep the cache directory within its byte budget")
+                .register(meterRegistry);
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public Optional<Entry> find(String key) {
+        Path entryDir = root.resolve(key);
+        Path metaFile = entryDir.resolve(META_FILE);
+        if (!Files.isRegularFile(metaFile)) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        try {
+            Meta meta = objectMapper.readValue(metaFile.toFile(), Meta.class);
+            List<TextSegment> segments = new ArrayList<>(meta.segments());
+            List<Embedding> embeddings = new ArrayList<>(meta.segments());
+            try (MappedEmbeddingStore store = MappedEmbeddingStore.open(entryDir)) {
+                store.forEach((embedding, segment) -> {
+                    embeddings.add(embedding);
+                    segments.add(segment);
+                });
+            }
+            if (segments.size() != meta.segments()) {
+                throw new IOException("expected " + meta.segments() + " segments, found " + segments.size());
+            }
+
+            touch(entryDir);
+            hits.incrementAndGet();
+            savedMillis.addAndGet(meta.processingMillis());
+            return Optional.of(new Entry(meta.sourceType(), meta.processingMillis(),
+                    new ParallelEmbeddingIngestor.EmbeddedSegments(segments, embeddings)));
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("♻️ Dropping unreadable content cache entry {}: {}", key, e.getMessage());
+            deleteRecursively(entryDir);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, String sourceType, long processingMillis, String extractedText,
+                    ParallelEmbeddingIngestor.EmbeddedSegments embedded) {
+        Path entryDir = root.resolve(key);
+        if (Files.exists(entryDir)) {
+            return;
+        }
+
+        // The entry is written to a scratch directory and moved into place, so readers never see a partial entry.
+        Path scratch = root.resolve(".tmp-" + UUID.randomUUID());
+        try {
+            List<TextSegment> contentSegments = embedded.segments().stream()
+                    .map(UploadContentCache::withoutUploadMetadata)
+                    .toList();
+            try (MappedEmbeddingStore store = MappedEmbeddingStore.open(scratch)) {
+                store.addAll(embedded.embeddings(), contentSegments);
+            }
+            Files.writeString(scratch.resolve(TEXT_FILE), extractedText, StandardCharsets.UTF_8);
+            objectMapper.writeValue(scratch.resolve(META_FILE).toFile(),
+                    new Meta(sourceType, processingMillis, contentSegments.size()));
+
+            Files.move(scratch, entryDir, StandardCopyOption.ATOMIC_MOVE);
+            log.info("♻️ Cached {} segments for content {}", contentSegments.size(), key);
+        } catch (IOException | UncheckedIOException e) {
+            // A concurrent upload of the same file may have won the race; its entry is equivalent.
+            if (!Files.exists(entryDir)) {
+                log.warn("Failed to cache content {}: {}", key, e.getMessage());
+            }
+            deleteRecursively(scratch);
+            return;
+        }
+        evictOverBudget(key);
+    }
+
+    // Entry directories carry their last use as their modification time, so the sweep needs no index of its own.
+    private synchronized void evictOverBudget(String keep) {
+        List<CachedEntry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                if (Files.isDirectory(dir) && !dir.getFileName().toString().startsWith(".tmp-")) {
+                    CachedEntry entry = new CachedEntry(dir, sizeOf(dir), Files.getLastModifiedTime(dir).toMillis());
+                    entries.add(entry);
+                    totalBytes += entry.bytes();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to sweep content cache {}: {}", root, e.getMessage());
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(CachedEntry::lastUsedMillis));
+        for (CachedEntry entry : entries) {
+            if (totalBytes <= maxBytes) {
+                return;
+            }
+            if (entry.dir().getFileName().toString().equals(keep)) {
+                continue;
+            }
+            deleteRecursively(entry.dir());
+            totalBytes -= entry.bytes();
+            evictions.incrementAndGet();
+            log.info("♻️ Evicted content cache entry {} ({} bytes)", entry.dir().getFileName(), entry.bytes());
+        }
+    }
+
+    private record CachedEntry(Path dir, long bytes, long lastUsedMillis) {
+    }
+
+    // Returns copies of the cached segments carrying the metadata of the upload they are attached to.
+    public static ParallelEmbeddingIngestor.EmbeddedSegments attachTo(ParallelEmbeddingIngestor.EmbeddedSegments cached,
+                                                                      Map<String, String> uploadMetadata) {
+        List<TextSegment> segments = cached.segments().stream()
+                .map(segment -> {
+                    Metadata metadata = segment.metadata().copy();
+                    uploadMetadata.forEach(metadata::put);
+                    return TextSegment.from(segment.text(), metadata);
+                })
+                .toList();
+        return new ParallelEmbeddingIngestor.EmbeddedSegments(segments, cached.embeddings());
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long savedMillis() {
+        return savedMillis.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private static void touch(Path entryDir) {
+        try {
+            Files.setLastModifiedTime(entryDir, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Failed to touch content cache entry {}: {}", entryDir, e.getMessage());
+        }
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .mapToLong(path -> {
+                        try {
+                            return Files.size(path);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .sum();
+        }
+    }
+
+    private static TextSegment withoutUploadMetadata(TextSegment segment) {
+        Metadata metadata = segment.metadata().copy();
+        PER_UPLOAD_KEYS.forEach(metadata::remove);
+        return TextSegment.from(segment.text(), metadata);
+    }
+
+    private static void deleteRecursively(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", directory, e.getMessage());
+        }
+    }
+}
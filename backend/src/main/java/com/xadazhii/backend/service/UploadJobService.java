@@ -0,0 +1,323 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.dto.UploadJob;
+import dev.langchain4j.data.document.Document;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class UploadJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    private final ParallelEmbeddingIngestor ingestor;
+    private final UploadContentCache contentCache;
+    private final SemanticAnswerCache answerCache;
+    private final QuestionPool questionPool;
+    private final ChatMessageService chatMessageService;
+    private final AudioTranscriptionService audioService;
+    private final ImageDescriptionService imageService;
+    private final Path uploadDir;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    private final Map<UploadJob.MediaKind, ThreadPoolExecutor> executors = new EnumMap<>(UploadJob.MediaKind.class);
+
+    public UploadJobService(ParallelEmbeddingIngestor ingestor,
+                            UploadContentCache contentCache,
+                            SemanticAnswerCache answerCache,
+                            QuestionPool questionPool,
+                            ChatMessageService chatMessageService,
+                            AudioTranscriptionService audioService,
+                            ImageDescriptionService imageService,
+                            MeterRegistry meterRegistry,
+                            @Value("${file.upload-dir}") String uploadDirStr,
+                            @Value("${upload.workers.image:2}") int imageWorkers,
+                            @Value("${upload.workers.audio-video:1}") int audioVideoWorkers,
+                            @Value("${upload.workers.pdf:2}") int pdfWorkers,
+                            @Value("${upload.workers.text:2}") int textWorkers,
+                            @Value("${upload.queue-capacity:20}") int queueCapacity) {
+        this.ingestor = ingestor;
+        this.contentCache = contentCache;
+        this.answerCache = answerCache;
+        this.questionPool = questionPool;
+        this.chatMessageService = chatMessageService;
+        this.audioService = audioService;
+        this.imageService = imageService;
+        this.uploadDir = Paths.get(uploadDirStr);
+        this.meterRegistry = meterRegistry;
+
+        executors.put(UploadJob.MediaKind.IMAGE, boundedExecutor("upload-image", imageWorkers, queueCapacity));
+        executors.put(UploadJob.MediaKind.AUDIO_VIDEO, boundedExecutor("upload-av", audioVideoWorkers, queueCapacity));
+        executors.put(UploadJob.MediaKind.PDF, boundedExecutor("upload-pdf", pdfWorkers, queueCapacity));
+        executors.put(UploadJob.MediaKind.TEXT, boundedExecutor("upload-text", textWorkers, queueCapacity));
+    }
+
+    private static ThreadPoolExecutor boundedExecutor(String name, int workers, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int poolSize = Math.max(1, workers);
+        // AbortPolicy: a full queue rejects the upload instead of blocking the request thread.
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public UploadJob submit(String chatId, MultipartFile file) throws IOException {
+        evictFinishedJobs();
+
+        String originalFilename = file.getOriginalFilename();
+        String contentType = file.getContentType();
+        UploadJob job = new UploadJob(chatId, originalFilename, UploadJob.kindOf(contentType));
+
+        // The multipart part is gone once the request ends, so the job works from a spooled copy.
+        // transferTo streams the part to disk, so the upload is never held in the heap as a whole.
+        Files.createDirectories(uploadDir);
+        Path spooled = uploadDir.resolve("job_" + job.getId());
+        file.transferTo(spooled);
+
+        jobs.put(job.getId(), job);
+        try {
+            // Extraction (vision, embeddings) is background work: chat turns are served first.
+            executors.get(job.getMediaKind()).execute(() -> ModelCallContext.run(ModelCallPriority.BACKGROUND,
+                    job.getChatId(), () -> process(job, contentType, spooled)));
+        } catch (RuntimeException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+
+        log.info("📥 Queued upload job {} for [{}] ({}, ChatID: {})", job.getId(), originalFilename, job.getMediaKind(), chatId);
+        return job;
+    }
+
+    public Optional<UploadJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    // Jobs of a deleted chat stop at their next step and never write to the chat again. Once this returns, no job
+    // of the chat is storing segments or messages, so the caller can drop the chat's data.
+    public void cancelChat(String chatId) {
+        for (UploadJob job : jobs.values()) {
+            if (job.getChatId().equals(chatId)) {
+                synchronized (job) {
+                    job.setCancelled(true);
+                }
+            }
+        }
+    }
+
+    private void process(UploadJob job, String contentType, Path file) {
+        if (job.isCancelled()) {
+            markCancelled(job);
+            deleteSpooled(file);
+            return;
+        }
+        job.setStatus(UploadJob.Status.PROCESSING);
+        String originalFilename = job.getFileName();
+        long started = System.nanoTime();
+        String outcome = "failed";
+
+        try {
+            job.setStage("hashing");
+            String contentKey = job.getMediaKind().name().toLowerCase(Locale.ROOT) + "-" + UploadContentCache.sha256(file);
+
+            ParallelEmbeddingIngestor.IngestionStats stats;
+            Optional<UploadContentCache.Entry> cached = contentCache.find(contentKey);
+            if (cached.isPresent()) {
+                job.setStage("attaching");
+                job.setCacheHit(true);
+                UploadContentCache.Entry entry = cached.get();
+                log.info("♻️ Content cache hit for [{}] ({}), skipping extraction (saved ~{} ms)",
+                        originalFilename, contentKey, entry.processingMillis());
+                stats = storeUnlessCancelled(job, UploadContentCache.attachTo(entry.embedded(), Map.of(
+                        "chatId", job.getChatId(),
+                        "file_name", originalFilename)));
+            } else {
+                stats = extractAndIngest(job, contentType, file, contentKey);
+            }
+
+            job.setSegments(stats.segments());
+            job.setStage("done");
+            job.setStatus(UploadJob.Status.COMPLETED);
+            outcome = "completed";
+
+        } catch (CancellationException e) {
+            log.info("🗑️ Upload job {} dropped: chat {} was deleted", job.getId(), job.getChatId());
+            markCancelled(job);
+            outcome = "cancelled";
+
+        } catch (Exception e) {
+            log.error("❌ Error processing file: {}", e.getMessage(), e);
+            job.setError("Error processing file: " + e.getMessage());
+            job.setStage("failed");
+            job.setStatus(UploadJob.Status.FAILED);
+        } finally {
+            deleteSpooled(file);
+            job.setFinishedAt(Instant.now());
+            Timer.builder("upload.processing")
+                    .description("Upload processing from hashing to stored segments")
+                    .tag("media", job.getMediaKind().name().toLowerCase(Locale.ROOT))
+                    .tag("cache", job.isCacheHit() ? "hit" : "miss")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Storing and announcing the material happen under the job's monitor, so cancelChat either waits for them
+    // or they see the cancellation and leave the chat's partition alone.
+    private ParallelEmbeddingIngestor.IngestionStats storeUnlessCancelled(
+            UploadJob job, ParallelEmbeddingIngestor.EmbeddedSegments embedded) {
+        synchronized (job) {
+            if (job.isCancelled()) {
+                throw new CancellationException();
+            }
+            ParallelEmbeddingIngestor.IngestionStats stats = ingestor.store(embedded);
+            log.info("🧠 Ingested successfully. ChatID: {}", job.getChatId());
+            // Answers cached before this upload may now be incomplete or wrong.
+            answerCache.invalidate(job.getChatId());
+            questionPool.onMaterialIngested(job.getChatId());
+
+            String messageText = String.format(
+                    "✅ Material `%s` processed successfully. You can now ask questions based on this file.",
+                    job.getFileName()
+            );
+            chatMessageService.append(job.getChatId(), messageText, true);
+            return stats;
+        }
+    }
+
+    private static void markCancelled(UploadJob job) {
+        job.setStage("cancelled");
+        job.setStatus(UploadJob.Status.CANCELLED);
+        job.setFinishedAt(Instant.now());
+    }
+
+    private static void deleteSpooled(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled upload {}: {}", file, e.getMessage());
+        }
+    }
+
+    private ParallelEmbeddingIngestor.IngestionStats extractAndIngest(UploadJob job, String contentType, Path file,
+                                                                      String contentKey) throws Exception {
+        String originalFilename = job.getFileName();
+        long started = System.nanoTime();
+
+        job.setStage("extracting");
+        String extractedText;
+        String sourceType;
+
+        switch (job.getMediaKind()) {
+            case IMAGE -> {
+                log.info("Type: Image. Running description service...");
+                extractedText = imageService.describe(Files.readAllBytes(file));
+                sourceType = "image";
+            }
+            case AUDIO_VIDEO -> {
+                log.info("Type: Audio/Video. Attempting transcription...");
+                try {
+                    extractedText = audioService.transcribe(file, originalFilename);
+                    sourceType = "audio_transcription";
+                } catch (Exception e) {
+                    log.warn("🎙️❌ Failed to transcribe, trying video frame analysis: {}", e.getMessage());
+                    job.setStage("describing frames");
+                    extractedText = imageService.describeVideo(file, originalFilename);
+                    sourceType = "video_frames";
+                }
+            }
+            case PDF -> {
+                log.info("Type: PDF. Parsing with PDFBox...");
+                try (PDDocument pd = PDDocument.load(file.toFile())) {
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    String pdfText = stripper.getText(pd);
+                    extractedText = (pdfText != null) ? pdfText : "";
+                    sourceType = "pdf";
+                }
+            }
+            default -> {
+                log.info("Type: Text/Other ({}). Loading as plain text...", contentType);
+                extractedText = Files.readString(file, StandardCharsets.UTF_8);
+                sourceType = "text_file";
+            }
+        }
+
+        // Tagged by source type, so audio files that fell back to frame analysis are timed separately.
+        Timer.builder("upload.extraction")
+                .description("Text extraction: transcription, vision, PDF parsing or plain reading")
+                .tag("source", sourceType)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+        if (extractedText == null || extractedText.trim().isEmpty()) {
+            throw new RuntimeException("Extracted text is empty. Cannot ingest empty document.");
+        }
+
+        if (job.isCancelled()) {
+            throw new CancellationException();
+        }
+        job.setStage("embedding");
+        Document document = Document.from(extractedText);
+
+        document.metadata().add("chatId", job.getChatId());
+        document.metadata().add("file_name", originalFilename);
+        document.metadata().add("source_type", sourceType);
+
+        log.info("🔍 Document Metadata before ingest: {}", document.metadata().asMap());
+
+        long embeddingStarted = System.nanoTime();
+        ParallelEmbeddingIngestor.EmbeddedSegments embedded = ingestor.embed(document);
+        Timer.builder("upload.embedding")
+                .description("Splitting and embedding extracted text")
+                .tag("media", job.getMediaKind().name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry)
+                .record(System.nanoTime() - embeddingStarted, TimeUnit.NANOSECONDS);
+        long processingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        // The cache is keyed by content, not by chat, so it is filled even if the chat is deleted meanwhile.
+        contentCache.put(contentKey, sourceType, processingMillis, extractedText, embedded);
+        return storeUnlessCancelled(job, embedded);
+    }
+
+    private void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+}
@@ -0,0 +1,90 @@
+package com.xadazhii.backend.load;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Capacity run of the chat and upload endpoints against a fake Ollama and an in-memory database in PostgreSQL mode.
+ * Skipped unless enabled:
+ *
+ * <pre>
+ * mvn test -Dtest=ChatLoadTests -Dloadtest=true -Dloadtest.users=50 -Dloadtest.duration-seconds=120
+ * </pre>
+ *
+ * Knobs, as system properties: {@code loadtest.users}, {@code loadtest.duration-seconds},
+ * {@code loadtest.testing-share}, {@code loadtest.upload-chars}, {@code loadtest.think-ms},
+ * {@code loadtest.ollama.first-token-ms}, {@code loadtest.ollama.tokens-per-second} and
+ * {@code loadtest.ollama.answer-tokens}. Backend settings such as {@code server.tomcat.threads.max} or
+ * {@code ollama.scheduler.max-in-flight} can be passed the same way.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class ChatLoadTests {
+
+    private static FakeOllamaServer ollama;
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void fakeOllama(DynamicPropertyRegistry registry) {
+        try {
+            ollama = new FakeOllamaServer(
+                    Duration.ofMillis(Long.getLong("loadtest.ollama.first-token-ms", 300)),
+                    Double.parseDouble(System.getProperty("loadtest.ollama.tokens-per-second", "40")),
+                    Integer.getInteger("loadtest.ollama.answer-tokens", 120));
+            Path workDir = Files.createTempDirectory("loadtest");
+            registry.add("ollama.server.host.url", ollama::baseUrl);
+            registry.add("ollama.api.url", () -> ollama.baseUrl() + "/api/generate");
+            registry.add("file.upload-dir", () -> workDir.resolve("uploads").toString());
+            registry.add("embedding.store.dir", () -> workDir.resolve("embeddings").toString());
+            registry.add("upload.content-cache.dir", () -> workDir.resolve("content-cache").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AfterAll
+    static void stopOllama() {
+        if (ollama != null) {
+            ollama.close();
+        }
+    }
+
+    @Test
+    void chatAndUploadUnderLoad() throws Exception {
+        LoadGenerator.Settings settings = new LoadGenerator.Settings(
+                Integer.getInteger("loadtest.users", 20),
+                Duration.ofSeconds(Long.getLong("loadtest.duration-seconds", 60)),
+                Double.parseDouble(System.getProperty("loadtest.testing-share", "0.2")),
+                Integer.getInteger("loadtest.upload-chars", 20_000),
+                Duration.ofMillis(Long.getLong("loadtest.think-ms", 0)));
+
+        List<LoadGenerator.EndpointReport> report =
+                new LoadGenerator(URI.create("http://localhost:" + port), settings).run();
+
+        LoadGenerator.EndpointReport chat = report.stream()
+                .filter(endpoint -> endpoint.endpoint().equals(LoadGenerator.CHAT_MESSAGE))
+                .findFirst()
+                .orElseThrow();
+        assertThat(chat.count()).isPositive();
+        assertThat(chat.errors()).isLessThan(chat.count());
+        assertThat(ollama.maxConcurrentGenerations()).isPositive();
+    }
+}
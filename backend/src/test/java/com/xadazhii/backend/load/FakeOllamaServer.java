@@ -0,0 +1,267 @@
+package com.xadazhii.backend.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Speaks the parts of the Ollama HTTP API the backend uses: {@code /api/chat}, plain and streamed as NDJSON,
+ * and {@code /api/generate} for vision. Every answer waits {@code firstTokenLatency} and then produces tokens at
+ * {@code tokensPerSecond}, like a GPU-bound model. Requests in JSON mode get canned testing questions or feedback,
+ * so testing turns pass validation.
+ */
+class FakeOllamaServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FakeOllamaServer.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Pattern QUESTION_TYPE = Pattern.compile("TYPE: (MC|OPEN)");
+
+    private static final String[] ANSWER_WORDS = {
+            "The", "lecture", "explains", "that", "gradient", "descent", "updates", "each", "weight", "against",
+            "the", "slope", "of", "the", "loss,", "so", "a", "smaller", "learning", "rate", "converges", "more",
+            "slowly", "but", "more", "reliably."
+    };
+
+    // Distinct topics, so the near-duplicate check accepts them as different questions.
+    private static final List<Map<String, Object>> MC_QUESTIONS = List.of(
+            mc("Which data structure gives O(1) average lookup by key?", "A hash table", "A linked list", "A binary heap"),
+            mc("What does a TCP three-way handshake establish?", "A connection with agreed sequence numbers", "An encrypted channel", "A DNS mapping"),
+            mc("Which organelle produces most of a cell's ATP?", "The mitochondrion", "The ribosome", "The Golgi apparatus"),
+            mc("What is the derivative of sin(x)?", "cos(x)", "-sin(x)", "tan(x)"),
+            mc("Which sorting algorithm has O(n log n) worst-case time?", "Merge sort", "Quicksort", "Insertion sort"),
+            mc("What does the second law of thermodynamics say about entropy?", "It never decreases in an isolated system", "It is always zero", "It only decreases"),
+            mc("Which SQL clause filters groups after aggregation?", "HAVING", "WHERE", "ORDER BY"),
+            mc("What causes the seasons on Earth?", "The tilt of its rotation axis", "Its distance to the Sun", "The Moon's orbit"),
+            mc("Which HTTP status code means the resource was not found?", "404", "500", "301"),
+            mc("In supply and demand, what happens to price when supply falls and demand stays the same?", "It rises", "It falls", "It stays the same")
+    );
+
+    private static final List<Map<String, Object>> OPEN_QUESTIONS = List.of(
+            open("Explain why binary search needs a sorted array."),
+            open("Describe how photosynthesis converts light into chemical energy."),
+            open("Why does a database index speed up reads but slow down writes?"),
+            open("Explain the difference between a process and a thread."),
+            open("What role does the learning rate play in training a neural network?"),
+            open("Describe what happens during the French Revolution's Reign of Terror."),
+            open("Explain how vaccines train the immune system."),
+            open("Why does inflation reduce the purchasing power of savings?"),
+            open("Describe how a compiler turns source code into machine code."),
+            open("Explain what Newton's third law says about a rocket in space.")
+    );
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration firstTokenLatency;
+    private final double tokensPerSecond;
+    private final int answerTokens;
+
+    private final AtomicInteger nextQuestion = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    FakeOllamaServer(Duration firstTokenLatency, double tokensPerSecond, int answerTokens) throws IOException {
+        this.firstTokenLatency = firstTokenLatency;
+        this.tokensPerSecond = tokensPerSecond;
+        this.answerTokens = answerTokens;
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-ollama-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/chat", this::chat);
+        server.createContext("/api/generate", this::generate);
+        server.start();
+        log.info("🤖 Fake Ollama listening on {} ({} ms to first token, {} tokens/s)",
+                baseUrl(), firstTokenLatency.toMillis(), tokensPerSecond);
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    // The most generations that ran at once, i.e. how far the backend's scheduler let concurrency go.
+    int maxConcurrentGenerations() {
+        return maxRunning.get();
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        JsonNode request = JSON.readTree(exchange.getRequestBody());
+        boolean stream = request.path("stream").asBoolean(true);
+        JsonNode messages = request.path("messages");
+        String lastMessage = messages.isEmpty() ? "" : messages.get(messages.size() - 1).path("content").asText();
+        int promptTokens = messages.toString().length() / 4;
+
+        String answer = "json".equals(request.path("format").asText()) ? testingAnswer(lastMessage) : explanation();
+        List<String> tokens = tokenize(answer);
+
+        begin();
+        try {
+            if (stream) {
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    sleep(firstTokenLatency.toMillis());
+                    for (String token : tokens) {
+                        writeLine(out, chunk(token, false));
+                        sleep(tokenDelayMillis());
+                    }
+                    ObjectNode done = chunk("", true);
+                    done.put("prompt_eval_count", promptTokens);
+                    done.put("eval_count", tokens.size());
+                    writeLine(out, done);
+                }
+            } else {
+                sleep(firstTokenLatency.toMillis() + tokens.size() * tokenDelayMillis());
+                ObjectNode response = chunk(answer, true);
+                response.put("prompt_eval_count", promptTokens);
+                response.put("eval_count", tokens.size());
+                respond(exchange, response);
+            }
+        } finally {
+            end();
+        }
+    }
+
+    private void generate(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String description = explanation();
+        begin();
+        try {
+            sleep(firstTokenLatency.toMillis() + tokenize(description).size() * tokenDelayMillis());
+            ObjectNode response = JSON.createObjectNode();
+            response.put("response", description);
+            response.put("done", true);
+            respond(exchange, response);
+        } finally {
+            end();
+        }
+    }
+
+    private String testingAnswer(String prompt) throws IOException {
+        Matcher type = QUESTION_TYPE.matcher(prompt);
+        if (prompt.contains("GENERATE_QUESTION") && type.find()) {
+            List<Map<String, Object>> questions = "MC".equals(type.group(1)) ? MC_QUESTIONS : OPEN_QUESTIONS;
+            return JSON.writeValueAsString(questions.get(Math.floorMod(nextQuestion.getAndIncrement(), questions.size())));
+        }
+        return JSON.writeValueAsString(Map.of(
+                "type", "FEEDBACK",
+                "evaluation", "CORRECT",
+                "feedback", "Good answer: it names the key idea and explains why it holds."));
+    }
+
+    private String explanation() {
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < answerTokens; i++) {
+            answer.append(i == 0 ? "" : " ").append(ANSWER_WORDS[i % ANSWER_WORDS.length]);
+        }
+        return answer.toString();
+    }
+
+    // Whitespace-led words for prose; JSON is cut into short pieces so the streaming validator sees partial values.
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (int start = 0; start < text.length(); ) {
+            int end = Math.min(text.length(), start + 4);
+            if (text.charAt(0) != '{') {
+                end = text.indexOf(' ', start + 1);
+                end = end < 0 ? text.length() : end;
+            }
+            tokens.add(text.substring(start, end));
+            start = end;
+        }
+        return tokens;
+    }
+
+    private static ObjectNode chunk(String content, boolean done) {
+        ObjectNode node = JSON.createObjectNode();
+        node.put("model", "fake");
+        node.putObject("message").put("content", content);
+        node.put("done", done);
+        return node;
+    }
+
+    private static void writeLine(OutputStream out, JsonNode node) throws IOException {
+        out.write((node.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void respond(HttpExchange exchange, JsonNode body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private long tokenDelayMillis() {
+        return tokensPerSecond <= 0 ? 0 : Math.round(1000 / tokensPerSecond);
+    }
+
+    private void begin() {
+        requests.incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    }
+
+    private void end() {
+        running.decrementAndGet();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Object> mc(String question, String correct, String wrong1, String wrong2) {
+        return Map.of(
+                "type", "MC",
+                "question", question,
+                "options", List.of(correct, wrong1, wrong2),
+                "correctOptionIndex", 0,
+                "optionExplanations", List.of(
+                        "Correct: " + correct + " is the textbook answer.",
+                        "Incorrect: " + wrong1 + " does not fit the definition.",
+                        "Incorrect: " + wrong2 + " does not fit the definition."));
+    }
+
+    private static Map<String, Object> open(String question) {
+        return Map.of("type", "OPEN", "question", question);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,239 @@
+package com.xadazhii.backend.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load: each virtual user creates a chat, uploads a text file, waits for it to be ingested and then
+ * sends chat messages back to back until the run ends, a share of them in testing mode. Every request is timed
+ * per endpoint, so the report gives throughput and p50/p99 latency for each.
+ */
+class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static final String CHAT_MESSAGE = "POST /api/chat/message";
+    static final String UPLOAD = "POST /api/upload/{chatid}";
+    static final String UPLOAD_INGESTED = "upload until ingested";
+
+    private static final String[] QUESTIONS = {
+            "Summarize the main idea of the uploaded lecture.",
+            "What does the material say about convergence?",
+            "Explain the second section in simpler words.",
+            "Which examples does the lecture use?",
+            "How does this topic relate to linear algebra?"
+    };
+
+    record Settings(int users, Duration duration, double testingShare, int uploadChars, Duration thinkTime) {
+    }
+
+    record EndpointReport(String endpoint, long count, long errors, double perSecond,
+                          double p50Millis, double p99Millis, double maxMillis) {
+    }
+
+    private final URI baseUri;
+    private final Settings settings;
+    private final HttpClient client;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    LoadGenerator(URI baseUri, Settings settings) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    List<EndpointReport> run() throws Exception {
+        ExecutorService users = Executors.newFixedThreadPool(settings.users());
+        long deadline = System.nanoTime() + settings.duration().toNanos();
+        long started = System.nanoTime();
+
+        List<Future<?>> running = new ArrayList<>();
+        for (int user = 0; user < settings.users(); user++) {
+            int userNumber = user;
+            running.add(users.submit(() -> {
+                runUser(userNumber, deadline);
+                return null;
+            }));
+        }
+        for (Future<?> user : running) {
+            user.get();
+        }
+        users.shutdown();
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        List<EndpointReport> report = new ArrayList<>();
+        for (String endpoint : List.of(UPLOAD, UPLOAD_INGESTED, CHAT_MESSAGE)) {
+            report.add(reportFor(endpoint, seconds));
+        }
+        return report;
+    }
+
+    private void runUser(int user, long deadline) throws Exception {
+        Random random = new Random(user);
+        String chatId = JSON.readTree(send(HttpRequest.newBuilder(baseUri.resolve("/api/chat"))
+                .POST(HttpRequest.BodyPublishers.noBody()), null).body()).path("id").asText();
+
+        upload(user, chatId);
+
+        boolean answeringMc = false;
+        boolean answeringOpen = false;
+        while (System.nanoTime() < deadline) {
+            String message;
+            String mode;
+            if (answeringMc || answeringOpen) {
+                mode = "testing";
+                message = answeringMc ? String.valueOf((char) ('A' + random.nextInt(3)))
+                        : "It works because each step halves the remaining range.";
+            } else if (random.nextDouble() < settings.testingShare()) {
+                mode = "testing";
+                message = "next question";
+            } else {
+                mode = "explanation";
+                message = QUESTIONS[random.nextInt(QUESTIONS.length)] + " (" + UUID.randomUUID() + ")";
+            }
+
+            HttpResponse<String> response = send(HttpRequest.newBuilder(baseUri.resolve("/api/chat/message"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(
+                            Map.of("chatId", chatId, "message", message, "mode", mode)))), CHAT_MESSAGE);
+
+            String reply = response.statusCode() == 200 ? JSON.readTree(response.body()).path("response").asText() : "";
+            boolean askedQuestion = "testing".equals(mode) && reply.contains("Question (");
+            answeringMc = askedQuestion && reply.contains("Select the correct answer");
+            answeringOpen = askedQuestion && !answeringMc;
+
+            if (!settings.thinkTime().isZero()) {
+                Thread.sleep(settings.thinkTime().toMillis());
+            }
+        }
+    }
+
+    // Content differs per user, so every upload is embedded rather than served from the content cache.
+    private void upload(int user, String chatId) throws Exception {
+        String boundary = "load-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"lecture-" + user + ".txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(lectureText(user, settings.uploadChars()).getBytes(StandardCharsets.UTF_8));
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        long started = System.nanoTime();
+        HttpResponse<String> accepted = send(HttpRequest.newBuilder(baseUri.resolve("/api/upload/" + chatId))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())), UPLOAD);
+        if (accepted.statusCode() != 202) {
+            return;
+        }
+
+        String jobId = JSON.readTree(accepted.body()).path("jobId").asText();
+        String status = "QUEUED";
+        while (!"COMPLETED".equals(status) && !"FAILED".equals(status)) {
+            Thread.sleep(100);
+            JsonNode job = JSON.readTree(send(HttpRequest.newBuilder(baseUri.resolve("/api/upload/jobs/" + jobId)).GET(),
+                    null).body());
+            status = job.path("status").asText();
+        }
+        timer(UPLOAD_INGESTED, "COMPLETED".equals(status) ? "200" : "failed")
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request, String endpoint) throws Exception {
+        long started = System.nanoTime();
+        String status = "error";
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofMinutes(5)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            status = String.valueOf(response.statusCode());
+            return response;
+        } finally {
+            if (endpoint != null) {
+                timer(endpoint, status).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Timer timer(String endpoint, String status) {
+        return Timer.builder("loadtest.request")
+                .tag("endpoint", endpoint)
+                .tag("status", status)
+                .publishPercentiles(0.5, 0.99)
+                .distributionStatisticExpiry(settings.duration().plusMinutes(10))
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+    }
+
+    // Percentiles are taken over successful requests only; failures are reported as a count.
+    private EndpointReport reportFor(String endpoint, double seconds) {
+        long count = 0;
+        long errors = 0;
+        double p50 = 0;
+        double p99 = 0;
+        double max = 0;
+        for (Timer timer : registry.find("loadtest.request").tag("endpoint", endpoint).timers()) {
+            count += timer.count();
+            String status = timer.getId().getTag("status");
+            if (!status.startsWith("2")) {
+                errors += timer.count();
+                continue;
+            }
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                if (percentile.percentile() == 0.5) {
+                    p50 = percentile.value(TimeUnit.MILLISECONDS);
+                } else if (percentile.percentile() == 0.99) {
+                    p99 = percentile.value(TimeUnit.MILLISECONDS);
+                }
+            }
+            max = Math.max(max, timer.max(TimeUnit.MILLISECONDS));
+        }
+        EndpointReport report = new EndpointReport(endpoint, count, errors, count / seconds, p50, p99, max);
+        log.info("📈 {}: {} requests ({} failed), {} req/s, p50 {} ms, p99 {} ms, max {} ms",
+                endpoint, count, errors, String.format("%.2f", report.perSecond()),
+                Math.round(p50), Math.round(p99), Math.round(max));
+        return report;
+    }
+
+    private static String lectureText(int user, int chars) {
+        String[] sentences = {
+                "Gradient descent moves the weights against the slope of the loss.",
+                "A learning rate that is too large makes the updates overshoot the minimum.",
+                "Momentum averages past gradients to damp oscillations.",
+                "Convex losses have a single minimum, which makes convergence easier to analyse.",
+                "Stochastic updates trade noise for much cheaper steps."
+        };
+        StringBuilder text = new StringBuilder("Lecture notes for student " + user + ".\n\n");
+        for (int i = 0; text.length() < chars; i++) {
+            text.append(sentences[i % sentences.length]).append(" (Part ").append(user).append('.').append(i).append(") ");
+            if (i % 6 == 5) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatAwareContentRetrieverTests {
+
+    @TempDir
+    Path dir;
+
+    private final EmbeddingModel model = new EmbeddingModel() {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{1f, segment.text().length()}))
+                    .toList());
+        }
+    };
+
+    private static TextSegment segment(String text, String chatId) {
+        return TextSegment.from(text, new Metadata().add("chatId", chatId));
+    }
+
+    @Test
+    void recordsStageTimingsAndSegmentCountsPerMode() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore(
+                chatId -> MappedEmbeddingStore.open(dir.resolve(chatId)));
+        store.addAll(
+                List.of(Embedding.from(new float[]{1f, 0f}), Embedding.from(new float[]{1f, 1f}),
+                        Embedding.from(new float[]{0f, 1f})),
+                List.of(segment("a1", "chat-a"), segment("a2", "chat-a"), segment("b1", "chat-b")));
+        ChatAwareContentRetriever retriever = new ChatAwareContentRetriever(
+                store, new QueryEmbeddingCache(model, registry, 10), 1, 0.0, registry, "explanation");
+
+        List<Content> contents = retriever.retrieve(Query.from("what is a1",
+                dev.langchain4j.rag.query.Metadata.from(UserMessage.from("what is a1"), "chat-a", List.of())));
+
+        assertThat(contents).hasSize(1);
+        assertThat(registry.get("rag.retrieval.embedding").tag("mode", "explanation").timer().count()).isEqualTo(1);
+        assertThat(registry.get("rag.retrieval.search").tag("mode", "explanation").timer().count()).isEqualTo(1);
+        assertThat(registry.get("rag.retrieval.candidates").summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.get("rag.retrieval.kept").summary().totalAmount()).isEqualTo(1);
+    }
+}
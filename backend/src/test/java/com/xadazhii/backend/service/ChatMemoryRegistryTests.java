@@ -0,0 +1,52 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMemoryRegistryTests {
+
+    private final ChatMemoryProvider provider = memoryId -> MessageWindowChatMemory.builder()
+            .id(memoryId)
+            .maxMessages(10)
+            .build();
+
+    @Test
+    void viewsShareTheRegisteredMemoryOfTheirChatAndMode() {
+        ChatMemoryRegistry registry = new ChatMemoryRegistry(provider, 10);
+        ChatMemoryProvider explanation = registry.viewsForMode("explanation");
+
+        explanation.get("chat-1").add(UserMessage.from("What is a Fourier series?"));
+
+        assertThat(explanation.get("chat-1").messages()).hasSize(1);
+        assertThat(registry.get("chat-1:explanation").messages()).hasSize(1);
+        assertThat(registry.viewsForMode("testing").get("chat-1").messages()).isEmpty();
+    }
+
+    @Test
+    void deletingAChatEvictsBothModes() {
+        ChatMemoryRegistry registry = new ChatMemoryRegistry(provider, 10);
+        registry.get("chat-1:explanation");
+        registry.get("chat-1:testing");
+        ChatMemory other = registry.get("chat-10:explanation");
+
+        registry.evictChat("chat-1");
+
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.get("chat-10:explanation")).isSameAs(other);
+    }
+
+    @Test
+    void memoriesAreBounded() {
+        ChatMemoryRegistry registry = new ChatMemoryRegistry(provider, 3);
+        for (int i = 0; i < 20; i++) {
+            registry.viewsForMode("explanation").get("chat-" + i).messages();
+        }
+
+        assertThat(registry.size()).isEqualTo(3);
+    }
+}
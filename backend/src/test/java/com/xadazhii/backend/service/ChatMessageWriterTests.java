@@ -0,0 +1,71 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.entity.ChatMessage;
+import com.xadazhii.backend.repository.ChatMessageRepository;
+import com.xadazhii.backend.repository.ChatRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageWriterTests {
+
+    private final ChatMessageRepository messageRepository = mock(ChatMessageRepository.class);
+    private final ChatRepository chatRepository = mock(ChatRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    ChatMessageWriterTests() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queuedMessagesAreWrittenInOrderedBatches() throws Exception {
+        // A long flush interval keeps the background thread out of the way; flush() is driven by the test.
+        ChatMessageWriter writer = new ChatMessageWriter(messageRepository, chatRepository, transactionManager,
+                true, 3, 60_000, 100);
+
+        for (int i = 0; i < 5; i++) {
+            writer.append(new ChatMessage(i % 2 == 0 ? "chat-a" : "chat-b", "m" + i, false));
+        }
+        verify(messageRepository, never()).saveAll(any());
+        assertThat(writer.hasPending()).isTrue();
+
+        writer.flush();
+
+        ArgumentCaptor<List<ChatMessage>> batches = ArgumentCaptor.forClass(List.class);
+        verify(messageRepository, times(2)).saveAll(batches.capture());
+        assertThat(batches.getAllValues().get(0)).extracting(ChatMessage::getMessage).containsExactly("m0", "m1", "m2");
+        assertThat(batches.getAllValues().get(1)).extracting(ChatMessage::getMessage).containsExactly("m3", "m4");
+
+        verify(chatRepository).recordActivity(eq("chat-a"), eq(2L), any(Instant.class));
+        verify(chatRepository).recordActivity(eq("chat-a"), eq(1L), any(Instant.class));
+        verify(chatRepository, times(2)).recordActivity(eq("chat-b"), eq(1L), any(Instant.class));
+        assertThat(writer.hasPending()).isFalse();
+        writer.shutdown();
+    }
+
+    @Test
+    void shutdownDrainsTheQueue() throws Exception {
+        ChatMessageWriter writer = new ChatMessageWriter(messageRepository, chatRepository, transactionManager,
+                true, 50, 60_000, 100);
+        writer.append(new ChatMessage("chat-a", "last words", true));
+
+        writer.shutdown();
+
+        verify(messageRepository).saveAll(any());
+        verify(chatRepository).recordActivity(eq("chat-a"), anyLong(), any(Instant.class));
+    }
+}
@@ -0,0 +1,86 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatPartitionedEmbeddingStoreTests {
+
+    private static TextSegment segment(String text, String chatId) {
+        return TextSegment.from(text, new Metadata().add("chatId", chatId));
+    }
+
+    private static EmbeddingSearchRequest requestFor(String chatId, Embedding query, int maxResults) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(maxResults)
+                .minScore(0.0)
+                .filter(metadataKey("chatId").isEqualTo(chatId))
+                .build();
+    }
+
+    @Test
+    void searchOnlyReturnsSegmentsOfRequestedChat() {
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore();
+
+        List<String> ids = store.addAll(
+                List.of(Embedding.from(new float[]{1f, 0f}),
+                        Embedding.from(new float[]{0.9f, 0.1f}),
+                        Embedding.from(new float[]{0f, 1f})),
+                List.of(segment("a1", "chat-a"),
+                        segment("b1", "chat-b"),
+                        segment("a2", "chat-a")));
+
+        assertThat(ids).hasSize(3).doesNotContainNull();
+        assertThat(store.partitionCount()).isEqualTo(2);
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(
+                requestFor("chat-a", Embedding.from(new float[]{1f, 0f}), 10)).matches();
+
+        assertThat(matches).extracting(match -> match.embedded().text()).containsExactly("a1", "a2");
+        assertThat(matches.get(0).embeddingId()).isEqualTo(ids.get(0));
+    }
+
+    @Test
+    void unknownChatReturnsNoMatches() {
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore();
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("a1", "chat-a"));
+
+        assertThat(store.search(requestFor("chat-x", Embedding.from(new float[]{1f, 0f}), 5)).matches()).isEmpty();
+    }
+
+    @Test
+    void removeByChatIdDropsPartition() {
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore();
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("a1", "chat-a"));
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("b1", "chat-b"));
+
+        store.removeAll(metadataKey("chatId").isEqualTo("chat-a"));
+
+        assertThat(store.partitionCount()).isEqualTo(1);
+        assertThat(store.search(requestFor("chat-b", Embedding.from(new float[]{1f, 0f}), 5)).matches()).hasSize(1);
+    }
+
+    @Test
+    void removeByChatIdDeletesPartitionDirectory(@TempDir Path dir) {
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore(
+                chatId -> MappedEmbeddingStore.open(dir.resolve(chatId)));
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("a1", "chat-a"));
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("b1", "chat-b"));
+
+        store.removeAll(metadataKey("chatId").isEqualTo("chat-a"));
+
+        assertThat(dir.resolve("chat-a")).doesNotExist();
+        assertThat(dir.resolve("chat-b")).isDirectory();
+        store.close();
+    }
+}
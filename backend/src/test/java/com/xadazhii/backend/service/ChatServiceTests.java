@@ -0,0 +1,55 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.repository.ChatMessageRepository;
+import com.xadazhii.backend.repository.ChatRepository;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+class ChatServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private final ChatRepository chatRepository = mock(ChatRepository.class);
+    private final UploadJobService uploadJobService = mock(UploadJobService.class);
+
+    private ChatService chatService(ChatPartitionedEmbeddingStore store) {
+        return new ChatService(chatRepository, mock(ChatMessageRepository.class), mock(ChatMessageWriter.class),
+                mock(ChatSessionStore.class), mock(PersistentChatMemoryStore.class), mock(ChatMemoryRegistry.class),
+                mock(SemanticAnswerCache.class), mock(QuestionPool.class), mock(QuestionSimilarityIndex.class), store,
+                uploadJobService);
+    }
+
+    private static TextSegment segment(String text, String chatId) {
+        return TextSegment.from(text, new Metadata().add("chatId", chatId));
+    }
+
+    @Test
+    void deletingAChatDeletesItsEmbeddingPartition() {
+        ChatPartitionedEmbeddingStore store = new ChatPartitionedEmbeddingStore(
+                chatId -> MappedEmbeddingStore.open(dir.resolve(chatId)));
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("a1", "chat-a"));
+        store.add(Embedding.from(new float[]{1f, 0f}), segment("b1", "chat-b"));
+
+        chatService(store).deleteById("chat-a");
+
+        assertThat(dir.resolve("chat-a")).doesNotExist();
+        assertThat(dir.resolve("chat-b")).isDirectory();
+        assertThat(store.segmentCount("chat-a")).isZero();
+
+        // Running uploads are stopped first, so none of them can write the partition back.
+        InOrder order = inOrder(uploadJobService, chatRepository);
+        order.verify(uploadJobService).cancelChat("chat-a");
+        order.verify(chatRepository).deleteById("chat-a");
+        store.close();
+    }
+}
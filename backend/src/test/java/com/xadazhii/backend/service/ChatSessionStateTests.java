@@ -0,0 +1,18 @@
+package com.xadazhii.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatSessionStateTests {
+
+    @Test
+    void questionHistoryKeepsOnlyTheNewestQuestions() {
+        ChatSessionState session = new ChatSessionState();
+        for (int i = 0; i < 10; i++) {
+            session.recordQuestion("q" + i, 3);
+        }
+
+        assertThat(session.getQuestionHistory()).containsExactly("q7", "q8", "q9");
+    }
+}
@@ -0,0 +1,143 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.entity.ChatSession;
+import com.xadazhii.backend.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatSessionStoreTests {
+
+    private final Map<String, ChatSession> table = new ConcurrentHashMap<>();
+    private final ChatSessionRepository repository = mock(ChatSessionRepository.class);
+
+    ChatSessionStoreTests() {
+        when(repository.findById(anyString())).thenAnswer(call -> Optional.ofNullable(table.get(call.<String>getArgument(0))));
+        when(repository.save(any(ChatSession.class))).thenAnswer(call -> {
+            ChatSession row = call.getArgument(0);
+            table.put(row.getChatId(), row);
+            return row;
+        });
+    }
+
+    @Test
+    void concurrentTurnsOnOneChatDoNotInterleave() throws Exception {
+        ChatSessionStore store = new ChatSessionStore(repository, new SimpleMeterRegistry(), 10, 60);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 200; i++) {
+            int turn = i;
+            pool.execute(() -> store.withSession("chat-1", session -> {
+                boolean waiting = session.isWaitingForAnswer();
+                session.getQuestionHistory().add("q" + turn);
+                Thread.yield();
+                session.setWaitingForAnswer(!waiting);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        store.withSession("chat-1", session -> {
+            assertThat(session.getQuestionHistory()).hasSize(200);
+            assertThat(session.isWaitingForAnswer()).isFalse();
+            return null;
+        });
+    }
+
+    // "Aa" and "BB" have the same hashCode, so they shared a lock stripe before locks were keyed per chat.
+    @Test
+    void aLongTurnOnOneChatDoesNotBlockAnotherChat() throws Exception {
+        ChatSessionStore store = new ChatSessionStore(repository, new SimpleMeterRegistry(), 10, 60);
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        CountDownLatch turnStarted = new CountDownLatch(1);
+        CountDownLatch modelAnswered = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> slowTurn = pool.submit(() -> store.withSession("Aa", session -> {
+            turnStarted.countDown();
+            try {
+                return modelAnswered.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertThat(turnStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Boolean> otherChat = CompletableFuture.supplyAsync(() -> store.withSession("BB", session -> true));
+        assertThat(otherChat.get(2, TimeUnit.SECONDS)).isTrue();
+
+        modelAnswered.countDown();
+        slowTurn.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+    }
+
+    @Test
+    void locksAreDroppedOnceNoTurnNeedsThem() throws Exception {
+        ChatSessionStore store = new ChatSessionStore(repository, new SimpleMeterRegistry(), 2, 60);
+        for (int i = 0; i < 50; i++) {
+            store.withSession("chat-" + i, session -> null);
+        }
+        assertThat(store.cachedCount()).isEqualTo(2);
+        assertThat(store.lockCount()).isZero();
+
+        CountDownLatch turnStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<?> holder = pool.submit(() -> store.withSession("chat-1", session -> {
+            turnStarted.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertThat(turnStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        // remove() queues behind the running turn and must not drop the lock that turn still holds.
+        Future<?> removal = pool.submit(() -> store.remove("chat-1"));
+        assertThat(store.lockCount()).isEqualTo(1);
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        removal.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+        assertThat(store.lockCount()).isZero();
+    }
+
+    @Test
+    void evictedAndRestartedSessionsAreReloadedFromTheDatabase() {
+        ChatSessionStore store = new ChatSessionStore(repository, new SimpleMeterRegistry(), 1, 60);
+        store.withSession("chat-1", session -> {
+            session.setWaitingForAnswer(true);
+            session.setLastQuestionType("MC");
+            session.setLastCorrectOptionIndex(2);
+            return null;
+        });
+        store.withSession("chat-2", session -> null);
+        assertThat(store.cachedCount()).isEqualTo(1);
+
+        ChatSessionStore restarted = new ChatSessionStore(repository, new SimpleMeterRegistry(), 1, 60);
+        for (ChatSessionStore candidate : new ChatSessionStore[]{store, restarted}) {
+            candidate.withSession("chat-1", session -> {
+                assertThat(session.isWaitingForAnswer()).isTrue();
+                assertThat(session.getLastQuestionType()).isEqualTo("MC");
+                assertThat(session.getLastCorrectOptionIndex()).isEqualTo(2);
+                return null;
+            });
+        }
+    }
+}
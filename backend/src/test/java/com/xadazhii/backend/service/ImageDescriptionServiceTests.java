@@ -0,0 +1,84 @@
+package com.xadazhii.backend.service;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageDescriptionServiceTests {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static byte[] chunk(String type, byte[] data) {
+        return ByteBuffer.allocate(12 + data.length)
+                .putInt(data.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII))
+                .put(data)
+                .putInt(0)
+                .array();
+    }
+
+    private static byte[] png(int marker) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SIGNATURE);
+        out.write(chunk("IHDR", new byte[13]));
+        out.write(chunk("IDAT", new byte[]{(byte) marker, 1, 2, 3}));
+        out.write(chunk("IEND", new byte[0]));
+        return out.toByteArray();
+    }
+
+    @Test
+    void splitsConcatenatedPngStreamIntoFrames() throws IOException {
+        byte[] first = png(1);
+        byte[] second = png(2);
+        ByteArrayOutputStream pipe = new ByteArrayOutputStream();
+        pipe.write(first);
+        pipe.write(second);
+        InputStream in = new ByteArrayInputStream(pipe.toByteArray());
+
+        assertThat(ImageDescriptionService.readPngFrame(in)).isEqualTo(first);
+        assertThat(ImageDescriptionService.readPngFrame(in)).isEqualTo(second);
+        assertThat(ImageDescriptionService.readPngFrame(in)).isNull();
+    }
+
+    @Test
+    void truncatedFrameIsRejected() throws IOException {
+        byte[] frame = png(1);
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 5));
+
+        assertThatThrownBy(() -> ImageDescriptionService.readPngFrame(in)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void oversizedChunkLengthIsRejectedBeforeReading() {
+        byte[] header = ByteBuffer.allocate(8)
+                .putInt(ImageDescriptionService.MAX_PNG_CHUNK_BYTES + 1)
+                .put("IDAT".getBytes(StandardCharsets.US_ASCII))
+                .array();
+        ByteArrayOutputStream pipe = new ByteArrayOutputStream();
+        pipe.writeBytes(SIGNATURE);
+        pipe.writeBytes(header);
+
+        assertThatThrownBy(() -> ImageDescriptionService.readPngFrame(new ByteArrayInputStream(pipe.toByteArray())))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("chunk length");
+    }
+
+    @Test
+    void negativeChunkLengthIsRejected() {
+        ByteArrayOutputStream pipe = new ByteArrayOutputStream();
+        pipe.writeBytes(SIGNATURE);
+        pipe.writeBytes(ByteBuffer.allocate(8).putInt(-1).put("IDAT".getBytes(StandardCharsets.US_ASCII)).array());
+
+        assertThatThrownBy(() -> ImageDescriptionService.readPngFrame(new ByteArrayInputStream(pipe.toByteArray())))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("chunk length");
+    }
+}
@@ -0,0 +1,91 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedEmbeddingStoreTests {
+
+    @TempDir
+    Path dir;
+
+    private static EmbeddingSearchRequest query(float... vector) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(vector))
+                .maxResults(10)
+                .minScore(0.0)
+                .build();
+    }
+
+    @Test
+    void segmentsSurviveReopen() throws Exception {
+        List<String> ids;
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+            ids = store.addAll(
+                    List.of(Embedding.from(new float[]{1f, 0f, 0f}), Embedding.from(new float[]{0f, 1f, 0f})),
+                    List.of(TextSegment.from("first", new Metadata().add("chatId", "c1")),
+                            TextSegment.from("second", new Metadata().add("chatId", "c1"))));
+        }
+
+        try (MappedEmbeddingStore reopened = MappedEmbeddingStore.open(dir)) {
+            assertThat(reopened.size()).isEqualTo(2);
+
+            List<EmbeddingMatch<TextSegment>> matches = reopened.search(query(0f, 1f, 0f)).matches();
+            assertThat(matches).extracting(match -> match.embedded().text()).containsExactly("second", "first");
+            assertThat(matches.get(0).embeddingId()).isEqualTo(ids.get(1));
+            assertThat(matches.get(0).embedded().metadata().getString("chatId")).isEqualTo("c1");
+            assertThat(matches.get(0).score()).isEqualTo(1.0);
+        }
+    }
+
+    @Test
+    void tornSegmentLineIsDroppedOnOpen() throws Exception {
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+            store.add(Embedding.from(new float[]{1f, 0f}), TextSegment.from("kept"));
+            store.add(Embedding.from(new float[]{0f, 1f}), TextSegment.from("lost"));
+        }
+        List<String> lines = Files.readAllLines(dir.resolve(MappedEmbeddingStore.SEGMENTS_FILE));
+        Files.writeString(dir.resolve(MappedEmbeddingStore.SEGMENTS_FILE),
+                lines.get(0) + "\n" + lines.get(1).substring(0, 10), StandardCharsets.UTF_8,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try (MappedEmbeddingStore reopened = MappedEmbeddingStore.open(dir)) {
+            assertThat(reopened.size()).isEqualTo(1);
+            reopened.add(Embedding.from(new float[]{0f, 1f}), TextSegment.from("again"));
+        }
+
+        try (MappedEmbeddingStore reopened = MappedEmbeddingStore.open(dir)) {
+            assertThat(reopened.search(query(0f, 1f)).matches())
+                    .extracting(match -> match.embedded().text()).containsExactly("again", "kept");
+        }
+    }
+
+    @Test
+    void removeAllByIdCompactsFiles() throws Exception {
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(dir)) {
+            String first = store.add(Embedding.from(new float[]{1f, 0f}), TextSegment.from("a"));
+            store.add(Embedding.from(new float[]{0f, 1f}), TextSegment.from("b"));
+
+            store.removeAll(List.of(first));
+
+            assertThat(store.size()).isEqualTo(1);
+            assertThat(store.search(query(1f, 0f)).matches())
+                    .extracting(match -> match.embedded().text()).containsExactly("b");
+        }
+
+        try (MappedEmbeddingStore reopened = MappedEmbeddingStore.open(dir)) {
+            assertThat(reopened.size()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.xadazhii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelCallSchedulerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ModelCallScheduler scheduler(int maxInFlight, int reserved, int maxQueued, Duration timeout) {
+        return new ModelCallScheduler("ollama", maxInFlight, reserved, maxQueued, timeout, timeout, registry);
+    }
+
+    @Test
+    void waitingCallGetsTheSlotOnReleaseAndTheQueueIsBounded() throws Exception {
+        ModelCallScheduler scheduler = scheduler(1, 0, 1, Duration.ofSeconds(5));
+
+        ModelCallScheduler.Permit first = scheduler.acquire();
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.call(() -> "answered");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        awaitQueued(scheduler, 1);
+
+        assertThatThrownBy(scheduler::acquire).isInstanceOf(ModelBusyException.class);
+        assertThat(registry.get("model.calls.rejected").tag("reason", "queue_full").counter().count()).isEqualTo(1);
+
+        first.close();
+        first.close();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("answered");
+        assertThat(scheduler.inFlight()).isZero();
+        assertThat(registry.get("model.calls.wait").tag("priority", "background").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void waitBeyondTheQueueTimeoutIsRejected() throws Exception {
+        ModelCallScheduler scheduler = scheduler(1, 0, 5, Duration.ofMillis(50));
+
+        ModelCallScheduler.Permit held = scheduler.acquire();
+        try {
+            assertThatThrownBy(scheduler::acquire).isInstanceOf(ModelBusyException.class);
+        } finally {
+            held.close();
+        }
+
+        assertThat(scheduler.queued()).isZero();
+        assertThat(registry.get("model.calls.rejected").tag("reason", "timeout").counter().count()).isEqualTo(1);
+        scheduler.acquire().close();
+    }
+
+    @Test
+    void freedSlotGoesToTheMostUrgentCallThenToTheLeastBusyChat() throws Exception {
+        ModelCallScheduler scheduler = scheduler(2, 0, 10, Duration.ofSeconds(5));
+        List<String> served = new CopyOnWriteArrayList<>();
+
+        ModelCallScheduler.Permit heavyChatRunning = ModelCallContext.supply(ModelCallPriority.BACKGROUND, "heavy",
+                () -> acquireUnchecked(scheduler));
+        ModelCallScheduler.Permit blocker = acquireUnchecked(scheduler);
+
+        CompletableFuture<?> heavy = submit(scheduler, ModelCallPriority.BACKGROUND, "heavy", served);
+        awaitQueued(scheduler, 1);
+        CompletableFuture<?> light = submit(scheduler, ModelCallPriority.BACKGROUND, "light", served);
+        awaitQueued(scheduler, 2);
+        CompletableFuture<?> title = submit(scheduler, ModelCallPriority.TITLE, "other", served);
+        awaitQueued(scheduler, 3);
+
+        blocker.close();
+        title.get(5, TimeUnit.SECONDS);
+        // Light was granted the slot title freed; heavy only gets one once light is done.
+        light.get(5, TimeUnit.SECONDS);
+        heavyChatRunning.close();
+        heavy.get(5, TimeUnit.SECONDS);
+
+        assertThat(served).containsExactly("other", "light", "heavy");
+    }
+
+    @Test
+    void reservedSlotIsOnlyUsedByInteractiveCalls() throws Exception {
+        ModelCallScheduler scheduler = scheduler(2, 1, 10, Duration.ofMillis(50));
+
+        ModelCallScheduler.Permit background = scheduler.acquire();
+        try {
+            assertThatThrownBy(scheduler::acquire).isInstanceOf(ModelBusyException.class);
+
+            ModelCallScheduler.Permit interactive = ModelCallContext.supply(ModelCallPriority.INTERACTIVE, "chat-1",
+                    () -> acquireUnchecked(scheduler));
+            assertThat(scheduler.inFlight()).isEqualTo(2);
+            interactive.close();
+        } finally {
+            background.close();
+        }
+    }
+
+    // Calls record their chat while holding the slot; with one free slot at a time that is the serving order.
+    private static CompletableFuture<?> submit(ModelCallScheduler scheduler, ModelCallPriority priority,
+                                               String chatId, List<String> served) {
+        return CompletableFuture.runAsync(() -> ModelCallContext.run(priority, chatId, () -> {
+            ModelCallScheduler.Permit permit = acquireUnchecked(scheduler);
+            try {
+                served.add(chatId);
+            } finally {
+                permit.close();
+            }
+        }));
+    }
+
+    private static ModelCallScheduler.Permit acquireUnchecked(ModelCallScheduler scheduler) {
+        try {
+            return scheduler.acquire();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitQueued(ModelCallScheduler scheduler, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (scheduler.queued() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(scheduler.queued()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,61 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelEmbeddingIngestorTests {
+
+    // Embeds each segment as (hash, 1), so a stored pair can be checked against its own text.
+    private final EmbeddingModel textHashModel = new EmbeddingModel() {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().hashCode() % 1000, 1f}))
+                    .toList());
+        }
+    };
+
+    @Test
+    void everySegmentIsStoredWithItsOwnEmbedding() {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Sentence number ").append(i).append(" about signals and systems. ");
+        }
+        Document document = Document.from(text.toString());
+        document.metadata().add("chatId", "chat-1");
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ParallelEmbeddingIngestor ingestor = new ParallelEmbeddingIngestor(
+                DocumentSplitters.recursive(100, 0), textHashModel, store, 3, registry);
+
+        ParallelEmbeddingIngestor.IngestionStats stats = ingestor.ingest(document);
+        assertThat(stats.segments()).isGreaterThan(10);
+
+        List<EmbeddingMatch<TextSegment>> stored = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{0f, 1f}))
+                .maxResults(1000)
+                .build()).matches();
+
+        assertThat(stored).hasSize(stats.segments());
+        for (EmbeddingMatch<TextSegment> match : stored) {
+            assertThat(match.embedding()).isEqualTo(textHashModel.embed(match.embedded()).content());
+            assertThat(match.embedded().metadata().getString("chatId")).isEqualTo("chat-1");
+        }
+        assertThat(registry.get("ingest.embedding.segments").counter().count()).isEqualTo(stats.segments());
+        assertThat(registry.get("ingest.store.segments").counter().count()).isEqualTo(stats.segments());
+        assertThat(registry.get("ingest.embedding").timer().count()).isEqualTo(1);
+    }
+}
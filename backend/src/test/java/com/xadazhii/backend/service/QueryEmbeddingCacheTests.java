@@ -0,0 +1,55 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryEmbeddingCacheTests {
+
+    private final AtomicInteger inferences = new AtomicInteger();
+
+    private final EmbeddingModel countingModel = new EmbeddingModel() {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            inferences.addAndGet(segments.size());
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length(), 1f}))
+                    .toList());
+        }
+    };
+
+    @Test
+    void normalizedRepeatsSkipInference() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(countingModel, new SimpleMeterRegistry(), 10);
+
+        Embedding first = cache.embed("GENERATE_QUESTION:  TYPE MC");
+        Embedding second = cache.embed("  generate_question: type   mc ");
+
+        assertThat(second).isSameAs(first);
+        assertThat(inferences.get()).isEqualTo(1);
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(countingModel, new SimpleMeterRegistry(), 2);
+
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");
+        cache.embed("c");
+        cache.embed("a");
+        cache.embed("b");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(inferences.get()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,83 @@
+package com.xadazhii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QuestionPoolTests {
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final TestingQuestionGenerator generator = mock(TestingQuestionGenerator.class);
+    private final QuestionPool pool = new QuestionPool(generator, new SimpleMeterRegistry(), 2, 10, 1);
+
+    private AiTestingResponse question(String type) {
+        AiTestingResponse response = new AiTestingResponse();
+        response.setType(type);
+        response.setQuestion(type + " question " + generated.incrementAndGet());
+        response.setOptions(List.of("yes", "no"));
+        response.setCorrectOptionIndex(0);
+        return response;
+    }
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void refillKeepsEachTypeToppedUpAndTakeSkipsAskedQuestions() throws InterruptedException {
+        when(generator.generate(anyString(), eq("MC"), any())).thenAnswer(invocation -> question("MC"));
+        when(generator.generate(anyString(), eq("OPEN"), any())).thenAnswer(invocation -> question("OPEN"));
+
+        assertThat(pool.take("chat-1", "MC", List.of())).isEmpty();
+        pool.refill("chat-1", List.of());
+        awaitDepth(4);
+
+        String first = pool.take("chat-1", "MC", List.of()).orElseThrow().getQuestion();
+        AiTestingResponse second = pool.take("chat-1", "MC", List.of(first)).orElseThrow();
+        assertThat(second.getQuestion()).isNotEqualTo(first).startsWith("MC");
+        assertThat(pool.take("chat-2", "OPEN", List.of())).isEmpty();
+        assertThat(pool.hits()).isEqualTo(2);
+        assertThat(pool.misses()).isEqualTo(2);
+    }
+
+    @Test
+    void ingestedMaterialReplacesBufferedQuestions() throws InterruptedException {
+        when(generator.generate(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> question(invocation.getArgument(1)));
+
+        pool.onMaterialIngested("chat-1");
+        assertThat(pool.depth()).isZero();
+
+        pool.refill("chat-1", List.of());
+        awaitDepth(4);
+        String stale = pool.take("chat-1", "OPEN", List.of()).orElseThrow().getQuestion();
+        pool.refill("chat-1", List.of(stale));
+        awaitDepth(4);
+
+        pool.onMaterialIngested("chat-1");
+        awaitDepth(4);
+        assertThat(generated.get()).isEqualTo(9);
+        assertThat(pool.take("chat-1", "OPEN", List.of()).orElseThrow().getQuestion()).isNotEqualTo(stale);
+
+        pool.remove("chat-1");
+        assertThat(pool.depth()).isZero();
+    }
+
+    private void awaitDepth(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.depth() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.depth()).isEqualTo(expected);
+    }
+}
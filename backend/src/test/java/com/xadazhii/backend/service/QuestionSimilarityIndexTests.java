@@ -0,0 +1,50 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuestionSimilarityIndexTests {
+
+    private final AtomicInteger embedded = new AtomicInteger();
+
+    // Questions about "polymorphism" point one way, everything else the other way.
+    private final EmbeddingModel topicModel = new EmbeddingModel() {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            embedded.addAndGet(segments.size());
+            return Response.from(segments.stream()
+                    .map(segment -> segment.text().toLowerCase().contains("polymorphism")
+                            ? Embedding.from(new float[]{1f, 0.01f * segment.text().length()})
+                            : Embedding.from(new float[]{0f, 1f}))
+                    .toList());
+        }
+    };
+
+    @Test
+    void paraphrasedQuestionIsRejectedAgainstTheWholeHistory() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuestionSimilarityIndex index = new QuestionSimilarityIndex(new QueryEmbeddingCache(topicModel, registry, 0), registry, 0.9, 10, 50);
+        List<String> history = List.of("What is polymorphism in Java?", "Which keyword declares a constant?");
+
+        assertThat(index.findNearDuplicate("chat-1", "Explain what polymorphism means", history))
+                .contains("What is polymorphism in Java?");
+        assertThat(index.findNearDuplicate("chat-1", "Which keyword declares a constant?", history))
+                .contains("Which keyword declares a constant?");
+        assertThat(index.findNearDuplicate("chat-1", "What does a constructor return?", List.of(history.get(0))))
+                .isEmpty();
+        assertThat(index.duplicates()).isEqualTo(2);
+
+        // Earlier questions are embedded once per chat, only the candidates are embedded on every check.
+        int afterFirstChecks = embedded.get();
+        index.findNearDuplicate("chat-1", "How does polymorphism work?", history);
+        assertThat(embedded.get()).isEqualTo(afterFirstChecks + 1);
+    }
+}
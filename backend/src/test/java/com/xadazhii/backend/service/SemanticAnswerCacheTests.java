@@ -0,0 +1,54 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticAnswerCacheTests {
+
+    // Questions mentioning "fourier" point one way, everything else the other way.
+    private final EmbeddingModel topicModel = new EmbeddingModel() {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(segment -> segment.text().contains("fourier")
+                            ? Embedding.from(new float[]{1f, 0.01f * segment.text().length()})
+                            : Embedding.from(new float[]{0f, 1f}))
+                    .toList());
+        }
+    };
+
+    private SemanticAnswerCache newCache() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new SemanticAnswerCache(new QueryEmbeddingCache(topicModel, registry, 100), registry, 0.95, 10, 10, 3);
+    }
+
+    @Test
+    void rephrasedQuestionIsServedUntilTheChatGetsNewMaterial() {
+        SemanticAnswerCache cache = newCache();
+        cache.put("chat-1", "What is a fourier series?", "A sum of sines and cosines.");
+
+        assertThat(cache.find("chat-1", "Explain the fourier series")).contains("A sum of sines and cosines.");
+        assertThat(cache.find("chat-2", "Explain the fourier series")).isEmpty();
+        assertThat(cache.find("chat-1", "What is a laplace transform?")).isEmpty();
+
+        cache.invalidate("chat-1");
+        assertThat(cache.find("chat-1", "Explain the fourier series")).isEmpty();
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(3);
+    }
+
+    @Test
+    void shortFollowUpsAreNeverCached() {
+        SemanticAnswerCache cache = newCache();
+        cache.put("chat-1", "fourier why?", "Because of orthogonality.");
+
+        assertThat(cache.find("chat-1", "fourier why?")).isEmpty();
+    }
+}
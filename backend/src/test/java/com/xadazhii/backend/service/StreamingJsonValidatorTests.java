@@ -0,0 +1,56 @@
+package com.xadazhii.backend.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingJsonValidatorTests {
+
+    private static final String QUESTION = """
+            {"evaluation": null, "question": "Which keyword declares a constant?", "type": "MC",
+             "options": ["final", "static"], "correctOptionIndex": 0, "optionExplanations": ["Yes.", "No."]}""";
+
+    @Test
+    void topLevelValuesAreCheckedAsTheyArriveInArbitraryChunks() {
+        Map<String, String> seen = new LinkedHashMap<>();
+        StreamingJsonValidator validator = new StreamingJsonValidator(
+                StreamingJsonValidator.propertiesOf(AiTestingResponse.class), seen::put);
+
+        for (int i = 0; i < QUESTION.length(); i += 3) {
+            validator.feed(QUESTION.substring(i, Math.min(QUESTION.length(), i + 3)));
+        }
+
+        assertThat(validator.text()).isEqualTo(QUESTION);
+        assertThat(seen).containsEntry("type", "MC")
+                .containsEntry("question", "Which keyword declares a constant?")
+                .containsEntry("evaluation", null)
+                .containsEntry("correctOptionIndex", "0")
+                .doesNotContainKey("options");
+    }
+
+    @Test
+    void invalidOutputIsRejectedBeforeTheAnswerIsComplete() {
+        StreamingJsonValidator prose = new StreamingJsonValidator(
+                StreamingJsonValidator.propertiesOf(AiTestingResponse.class), (field, value) -> { });
+        assertThatThrownBy(() -> prose.feed("Sure! Here is"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        StreamingJsonValidator unknownProperty = new StreamingJsonValidator(
+                StreamingJsonValidator.propertiesOf(AiTestingResponse.class), (field, value) -> { });
+        assertThatThrownBy(() -> unknownProperty.feed("{\"answer\": "))
+                .hasMessageContaining("answer");
+
+        StreamingJsonValidator wrongType = new StreamingJsonValidator(
+                StreamingJsonValidator.propertiesOf(AiTestingResponse.class), (field, value) -> {
+                    if ("type".equals(field) && !"OPEN".equals(value)) {
+                        throw new IllegalArgumentException("Expected a question of TYPE: OPEN.");
+                    }
+                });
+        wrongType.feed("{\"type\": \"M");
+        assertThatThrownBy(() -> wrongType.feed("C\""))
+                .hasMessageContaining("OPEN");
+    }
+}
@@ -0,0 +1,103 @@
+package com.xadazhii.backend.service;
+
+import com.xadazhii.backend.entity.ChatMemoryRecord;
+import com.xadazhii.backend.repository.ChatMemoryRecordRepository;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SummarizingTokenWindowChatMemoryTests {
+
+    private final Map<String, ChatMemoryRecord> table = new ConcurrentHashMap<>();
+    private final ChatMemoryRecordRepository repository = mock(ChatMemoryRecordRepository.class);
+    private final ApproximateTokenizer tokenizer = new ApproximateTokenizer();
+    private final List<Boolean> savedUnderLock = new CopyOnWriteArrayList<>();
+    private PersistentChatMemoryStore lockOwner;
+
+    SummarizingTokenWindowChatMemoryTests() {
+        when(repository.findById(anyString())).thenAnswer(call -> Optional.ofNullable(table.get(call.<String>getArgument(0))));
+        when(repository.save(any(ChatMemoryRecord.class))).thenAnswer(call -> {
+            ChatMemoryRecord row = call.getArgument(0);
+            if (lockOwner != null) {
+                savedUnderLock.add(Thread.holdsLock(lockOwner.lockFor(row.getMemoryId())));
+            }
+            table.put(row.getMemoryId(), row);
+            return row;
+        });
+    }
+
+    @Test
+    void oldTurnsAreEvictedIntoTheSummaryAndTheWindowStaysWithinBudget() throws Exception {
+        ChatLanguageModel summaryModel = messages -> Response.from(AiMessage.from("student studied fourier series"));
+        PersistentChatMemoryStore store = new PersistentChatMemoryStore(repository, 10);
+        ConversationSummarizer summarizer = new ConversationSummarizer(summaryModel, store, new SimpleMeterRegistry(), 50);
+        SummarizingTokenWindowChatMemory memory =
+                new SummarizingTokenWindowChatMemory("chat-1:explanation", 80, tokenizer, store, summarizer);
+
+        memory.add(SystemMessage.from("You are a tutor."));
+        for (int i = 0; i < 6; i++) {
+            memory.add(UserMessage.from("Question " + i + " about the Fourier series of a square wave?"));
+            memory.add(AiMessage.from("Answer " + i + ": odd harmonics with amplitudes falling as 1/n."));
+        }
+
+        for (int i = 0; i < 50 && store.getSummary("chat-1:explanation") == null; i++) {
+            Thread.sleep(20);
+        }
+        memory.add(UserMessage.from("And the Gibbs phenomenon?"));
+
+        List<ChatMessage> messages = memory.messages();
+        assertThat(messages.get(0)).isInstanceOf(SystemMessage.class);
+        assertThat(((SystemMessage) messages.get(0)).text())
+                .startsWith("You are a tutor.")
+                .contains("student studied fourier series");
+        assertThat(messages.get(messages.size() - 1)).isEqualTo(UserMessage.from("And the Gibbs phenomenon?"));
+        assertThat(messages).doesNotContain(UserMessage.from("Question 0 about the Fourier series of a square wave?"));
+
+        List<ChatMessage> window = store.getMessages("chat-1:explanation");
+        String summary = store.getSummary("chat-1:explanation");
+        assertThat(tokenizer.estimateTokenCountInMessages(window)
+                + tokenizer.estimateTokenCountInText(SummarizingTokenWindowChatMemory.SUMMARY_HEADER + summary))
+                .isLessThanOrEqualTo(80);
+        summarizer.shutdown();
+    }
+
+    @Test
+    void retrievedMaterialReachesTheModelOnlyOnItsOwnTurn() {
+        PersistentChatMemoryStore store = new PersistentChatMemoryStore(repository, 10);
+        lockOwner = store;
+        SummarizingTokenWindowChatMemory memory =
+                new SummarizingTokenWindowChatMemory("chat-1:explanation", 1000, tokenizer, store, null);
+        UserMessage question = UserMessage.from("What is a Fourier series?");
+        // DefaultRetrievalAugmentor calls the ChatMessage overload.
+        ChatMessage augmented = new RetrievalContentInjector().inject(
+                List.of(Content.from("A Fourier series writes a periodic function as a sum of sines.")), (ChatMessage) question);
+
+        memory.add(SystemMessage.from("You are a tutor."));
+        memory.add(augmented);
+
+        assertThat(augmented).isInstanceOf(AugmentedUserMessage.class);
+        assertThat(memory.messages()).last().isSameAs(augmented);
+        assertThat(store.getMessages("chat-1:explanation")).last().isEqualTo(question);
+
+        memory.add(AiMessage.from("A sum of sines and cosines."));
+        assertThat(memory.messages()).contains(question).doesNotContain(augmented);
+        assertThat(savedUnderLock).isNotEmpty().containsOnly(false);
+    }
+}
@@ -0,0 +1,114 @@
+package com.xadazhii.backend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadContentCacheTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void identicalBytesHashToTheSameKey() throws Exception {
+        Path first = Files.writeString(dir.resolve("a.txt"), "lecture 1", StandardCharsets.UTF_8);
+        Path second = Files.writeString(dir.resolve("b.txt"), "lecture 1", StandardCharsets.UTF_8);
+        Path other = Files.writeString(dir.resolve("c.txt"), "lecture 2", StandardCharsets.UTF_8);
+
+        assertThat(UploadContentCache.sha256(first)).isEqualTo(UploadContentCache.sha256(second));
+        assertThat(UploadContentCache.sha256(first)).isNotEqualTo(UploadContentCache.sha256(other));
+    }
+
+    private static ParallelEmbeddingIngestor.EmbeddedSegments lecture(String text) {
+        return new ParallelEmbeddingIngestor.EmbeddedSegments(
+                List.of(TextSegment.from(text, new Metadata().put("source_type", "pdf"))),
+                List.of(Embedding.from(new float[]{1f, 0f})));
+    }
+
+    private static long sizeOf(Path directory) throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteTree(Path directory) throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreSweptOnceTheBudgetIsExceeded() throws Exception {
+        Path root = dir.resolve("cache");
+        UploadContentCache probe = new UploadContentCache(new SimpleMeterRegistry(), root.toString(), Long.MAX_VALUE);
+        probe.put("probe", "pdf", 10, "lecture", lecture("lecture"));
+        long entryBytes = sizeOf(root.resolve("probe"));
+        deleteTree(root);
+
+        // Room for two entries of this size, not three.
+        UploadContentCache cache = new UploadContentCache(new SimpleMeterRegistry(), root.toString(),
+                entryBytes * 2 + entryBytes / 2);
+        cache.put("pdf-a", "pdf", 10, "lecture", lecture("lecture"));
+        cache.put("pdf-b", "pdf", 10, "lecture", lecture("lecture"));
+        Files.setLastModifiedTime(root.resolve("pdf-a"), FileTime.from(Instant.now().minusSeconds(20)));
+        Files.setLastModifiedTime(root.resolve("pdf-b"), FileTime.from(Instant.now().minusSeconds(10)));
+        assertThat(cache.find("pdf-a")).isPresent();
+
+        cache.put("pdf-c", "pdf", 10, "lecture", lecture("lecture"));
+
+        assertThat(root.resolve("pdf-b")).doesNotExist();
+        assertThat(root.resolve("pdf-a")).isDirectory();
+        assertThat(root.resolve("pdf-c")).isDirectory();
+        assertThat(cache.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void cachedSegmentsAreAttachedToTheNewChat() {
+        UploadContentCache cache = new UploadContentCache(new SimpleMeterRegistry(), dir.resolve("cache").toString(),
+                Long.MAX_VALUE);
+        ParallelEmbeddingIngestor.EmbeddedSegments embedded = new ParallelEmbeddingIngestor.EmbeddedSegments(
+                List.of(TextSegment.from("fourier", new Metadata()
+                                .put("chatId", "chat-1").put("file_name", "l1.pdf").put("source_type", "pdf")),
+                        TextSegment.from("laplace", new Metadata()
+                                .put("chatId", "chat-1").put("file_name", "l1.pdf").put("source_type", "pdf"))),
+                List.of(Embedding.from(new float[]{1f, 0f}), Embedding.from(new float[]{0f, 1f})));
+
+        assertThat(cache.find("pdf-abc")).isEmpty();
+        cache.put("pdf-abc", "pdf", 1500, "fourier laplace", embedded);
+
+        Optional<UploadContentCache.Entry> hit = cache.find("pdf-abc");
+        assertThat(hit).isPresent();
+        assertThat(hit.get().sourceType()).isEqualTo("pdf");
+
+        ParallelEmbeddingIngestor.EmbeddedSegments attached = UploadContentCache.attachTo(hit.get().embedded(),
+                Map.of("chatId", "chat-2", "file_name", "copy.pdf"));
+        assertThat(attached.segments()).extracting(TextSegment::text).containsExactly("fourier", "laplace");
+        assertThat(attached.embeddings()).isEqualTo(embedded.embeddings());
+        for (TextSegment segment : attached.segments()) {
+            assertThat(segment.metadata().getString("chatId")).isEqualTo("chat-2");
+            assertThat(segment.metadata().getString("file_name")).isEqualTo("copy.pdf");
+            assertThat(segment.metadata().getString("source_type")).isEqualTo("pdf");
+        }
+
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.savedMillis()).isEqualTo(1500);
+    }
+}
@@ -344,25 +344,19 @@ async function sendPrompt(chatId, promptText, inputElement, autoGenerated = fals
 
     console.log('Sending prompt with mode:', mode);
 
-    const res = await fetch(window.buildApiUrl(`/api/chat/message`), {
-      method: 'POST',
-      headers: {
-        'Content-Type': 'application/json',
-        'Accept': 'application/json'
-      },
-      body: JSON.stringify({
-        chatId: chatId,
-        message: promptText,
-        mode: mode
-      })
+    // Explanation answers arrive token by token; testing replies come as a single "done" event.
+    let streamed = '';
+    const data = await streamChatMessage({ chatId: chatId, message: promptText, mode: mode }, token => {
+      if (!streamed && activeTypingAnimation) {
+        activeTypingAnimation.cancel();
+      }
+      streamed += token;
+      aiMessage.content = streamed;
+      if (window.updateMessageDomContent) {
+        window.updateMessageDomContent(aiMessage._id, aiMessage.content);
+      }
     });
 
-    if (!res.ok) {
-      throw new Error(`Server returned ${res.status}: ${res.statusText}`);
-    }
-
-    const data = await res.json();
-
     if (data.success && data.response) {
       let fullResponse = data.response;
 
@@ -390,7 +384,7 @@ async function sendPrompt(chatId, promptText, inputElement, autoGenerated = fals
         activeTypingAnimation.cancel();
       }
 
-      activeTypingAnimation = animateTyping(aiMessage, fullResponse, allChats, () => {
+      const onResponseShown = () => {
         activeTypingAnimation = null;
 
         // Check for options in the response and create buttons
@@ -422,7 +416,18 @@ async function sendPrompt(chatId, promptText, inputElement, autoGenerated = fals
             inputElement.focus();
           }
         }
-      });
+      };
+
+      if (streamed) {
+        aiMessage.content = fullResponse;
+        localStorage.setItem('allChats', JSON.stringify(allChats));
+        if (window.updateMessageDomContent) {
+          window.updateMessageDomContent(aiMessage._id, aiMessage.content);
+        }
+        onResponseShown();
+      } else {
+        activeTypingAnimation = animateTyping(aiMessage, fullResponse, allChats, onResponseShown);
+      }
 
     } else {
       aiMessage.content = 'Error: ' + (data.error || 'Unknown error');
@@ -452,6 +457,58 @@ async function sendPrompt(chatId, promptText, inputElement, autoGenerated = fals
 }
 
 
+// POSTs to the SSE endpoint (EventSource only supports GET) and parses the event stream by hand.
+// Resolves with the same shape as /api/chat/message: { success, response, error }.
+async function streamChatMessage(body, onToken) {
+  const res = await fetch(window.buildApiUrl(`/api/chat/message/stream`), {
+    method: 'POST',
+    headers: {
+      'Content-Type': 'application/json',
+      'Accept': 'text/event-stream'
+    },
+    body: JSON.stringify(body)
+  });
+
+  if (!res.ok || !res.body) {
+    throw new Error(`Server returned ${res.status}: ${res.statusText}`);
+  }
+
+  const reader = res.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = '';
+
+  while (true) {
+    const { value, done } = await reader.read();
+    if (done) break;
+    buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n');
+
+    let boundary;
+    while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+      const rawEvent = buffer.slice(0, boundary);
+      buffer = buffer.slice(boundary + 2);
+
+      let name = 'message';
+      const dataLines = [];
+      rawEvent.split('\n').forEach(line => {
+        if (line.startsWith('event:')) name = line.slice(6).trim();
+        else if (line.startsWith('data:')) dataLines.push(line.slice(5).replace(/^ /, ''));
+      });
+      if (dataLines.length === 0) continue;
+      // Every payload is JSON, so leading spaces of tokens survive the SSE framing.
+      const payload = JSON.parse(dataLines.join('\n'));
+
+      if (name === 'token') {
+        onToken(payload.t);
+      } else if (name === 'done') {
+        return { success: true, response: payload.response };
+      } else if (name === 'error') {
+        return { success: false, error: payload.error };
+      }
+    }
+  }
+  return { success: false, error: 'The response stream ended unexpectedly.' };
+}
+
 function animateTyping(aiMessage, fullText, allChats, onComplete) {
   let currentIndex = 0;
   let cancelled = false;
@@ -607,14 +664,7 @@ async function fetchChatMessages(chatId) {
 
     if (res.ok) {
       const chat = await res.json();
-      const serverMessages = (chat.messages || []).map(cm => ({
-        _id: window.makeId(),
-        type: 'text',
-        content: cm.message || '',
-        message: cm.message || '',
-        isModelMessage: !!cm.modelMessage,
-        pending: !!cm.pending
-      }));
+      const serverMessages = (chat.messages || []).map(toClientMessage);
 
       try {
         const allChats = JSON.parse(localStorage.getItem('allChats') || '{}');
@@ -623,6 +673,7 @@ async function fetchChatMessages(chatId) {
       } catch (e) {}
 
       renderMessages(serverMessages, container);
+      renderLoadEarlierButton(chatId, chat.nextCursor, container);
       return;
     }
   } catch (err) {
@@ -635,6 +686,48 @@ async function fetchChatMessages(chatId) {
   renderMessages(messages, container);
 }
 
+function toClientMessage(cm) {
+  return {
+    _id: window.makeId(),
+    type: 'text',
+    content: cm.message || '',
+    message: cm.message || '',
+    isModelMessage: !!cm.modelMessage,
+    pending: !!cm.pending
+  };
+}
+
+// Older history is fetched one page at a time (newest first) and prepended above the current messages.
+function renderLoadEarlierButton(chatId, cursor, container) {
+  const existing = container.querySelector('.load-earlier');
+  if (existing) existing.remove();
+  if (!cursor) return;
+
+  const button = document.createElement('button');
+  button.className = 'load-earlier';
+  button.textContent = 'Load earlier messages';
+  button.addEventListener('click', async () => {
+    button.disabled = true;
+    try {
+      const res = await fetch(window.buildApiUrl(`/api/chat/${chatId}/messages?before=${cursor}`), {
+        method: 'GET',
+        headers: { 'Accept': 'application/json' }
+      });
+      if (!res.ok || currentChatID !== chatId) return;
+
+      const page = await res.json();
+      const older = (page.messages || []).map(toClientMessage).reverse();
+      const anchor = button.nextSibling;
+      older.forEach(msg => container.insertBefore(createMessageNode(msg), anchor));
+      renderLoadEarlierButton(chatId, page.nextCursor, container);
+    } catch (err) {
+      console.warn('Failed to load earlier messages', err);
+      button.disabled = false;
+    }
+  });
+  container.insertBefore(button, container.firstChild);
+}
+
 function createMessageNode(msg) {
   const wrapper = document.createElement('div');
   wrapper.className = `message-wrapper ${msg.isModelMessage ? 'model' : 'user'}`;
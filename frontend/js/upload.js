@@ -35,6 +35,20 @@ async function ensureMessageShown(msg) {
   }, 120);
 }
 
+async function waitForUploadJob(jobId, intervalMs = 1500) {
+  while (true) {
+    const res = await fetch(window.buildApiUrl(`/api/upload/jobs/${jobId}`));
+    if (!res.ok) {
+      throw new Error(`Upload job ${jobId} status request failed: ${res.status}`);
+    }
+    const job = await res.json();
+    if (job.status === 'COMPLETED' || job.status === 'FAILED' || job.status === 'CANCELLED') {
+      return job;
+    }
+    await new Promise(resolve => setTimeout(resolve, intervalMs));
+  }
+}
+
 function initializeUploader() {
   const uploadButton = document.getElementById('upload-trigger-button');
   if (!uploadButton) {
@@ -147,6 +161,18 @@ function initializeUploader() {
       if (response.ok) {
         const serverMsg = await response.json();
 
+        if (serverMsg.jobId) {
+          const job = await waitForUploadJob(serverMsg.jobId);
+          if (job.status === 'FAILED') {
+            alert(`❌ ${job.error || 'Error processing file.'}`);
+            return;
+          }
+          // The chat was deleted while the file was being processed.
+          if (job.status === 'CANCELLED') {
+            return;
+          }
+        }
+
         const fileMsg = {
           _id: window.makeId(),
           type: 'file',